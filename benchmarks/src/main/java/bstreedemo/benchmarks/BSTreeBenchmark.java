@@ -0,0 +1,540 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import bstreedemo.BSTreeAPI;
+import bstreedemo.BSTreeCodec;
+import bstreedemo.ConcurrentBSTree;
+import bstreedemo.IntBSTree;
+import bstreedemo.PagedBSTree;
+import bstreedemo.PooledBSTree;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Measurements of the binary search tree classes that are not JMH
+ * benchmarks. <br>
+ * Each measurement prints its results to the standard output. Run from
+ * the benchmark jar with
+ * java -cp benchmarks/target/benchmarks.jar bstreedemo.benchmarks.BSTreeBenchmark
+ * @see BSTree
+ */
+public class BSTreeBenchmark
+{
+
+    /**
+     * keeps the object being measured reachable while the heap is measured
+     */
+    private static Object retained;
+
+    /**
+     * A key that counts the comparisons made between keys.
+     */
+    private static class CountingKey implements Comparable<CountingKey>
+    {
+        /**
+         * the number of comparisons made since the last reset
+         */
+        static long comparisons;
+
+        /**
+         * the value of this key
+         */
+        final int value;
+
+        CountingKey(int value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(CountingKey other)
+        {
+            comparisons++;
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        removeComparisons(4000, true);
+        removeComparisons(100000, false);
+        bytesPerEntry(1000000);
+        concurrentScaling(Runtime.getRuntime().availableProcessors(), 1000);
+        snapshotLoad(1000000);
+        pagedTree(1000000, 256);
+    }
+
+    /**
+     * Builds the same tree twice, once as a BSTree and once as a
+     * FormerTree, removes every key from both in the same order and
+     * prints the comparisons each made per remove. Keys inserted in random
+     * order and removed in another random order make a good part of the
+     * removed nodes have two children; ascending keys make a chain removed
+     * from its deep end, where no node has two.
+     * @param n the number of keys
+     * @param ascending whether to insert the keys in ascending order and
+     * remove them in descending order
+     */
+    private static void removeComparisons(int n, boolean ascending)
+    {
+        List<Integer> inserted = new ArrayList<>();
+        for(int i = 0; i < n; i++)
+            inserted.add(i);
+        List<Integer> removed = new ArrayList<>(inserted);
+        if(ascending)
+            Collections.reverse(removed);
+        else
+        {
+            Collections.shuffle(inserted, new Random(n));
+            Collections.shuffle(removed, new Random(-n));
+        }
+        BSTree<CountingKey> tree = new BSTree<>();
+        FormerTree former = new FormerTree();
+        for(int key : inserted)
+        {
+            tree.insert(new CountingKey(key));
+            former.insert(new CountingKey(key));
+        }
+        CountingKey.comparisons = 0;
+        for(int key : removed)
+            tree.remove(new CountingKey(key));
+        long single = CountingKey.comparisons;
+        CountingKey.comparisons = 0;
+        for(int key : removed)
+            former.remove(new CountingKey(key));
+        long twice = CountingKey.comparisons;
+        System.out.printf("remove, %d %s keys: %.1f comparisons per remove, former path %.1f, "
+                + "%.0f%% of removed nodes with two children%n", n, ascending ? "ascending" : "random",
+                (double) single / n, (double) twice / n, 100.0 * former.twoChildren / n);
+    }
+
+    /**
+     * The remove of BSTree before it had parent links, kept to be measured
+     * against: remove searches for the node, findParent walks down from
+     * the root again to its parent, and a node with two children takes the
+     * data of its in-order successor, which is removed the same way.
+     */
+    private static class FormerTree
+    {
+        /**
+         * A node of the tree.
+         */
+        private static class Node
+        {
+            CountingKey data;
+            Node left;
+            Node right;
+
+            Node(CountingKey data)
+            {
+                this.data = data;
+            }
+        }
+
+        /**
+         * the root of the tree
+         */
+        private Node root;
+
+        /**
+         * the number of nodes with two children removed
+         */
+        int twoChildren;
+
+        void insert(CountingKey item)
+        {
+            if(root == null)
+            {
+                root = new Node(item);
+                return;
+            }
+            Node current = root;
+            while(true)
+            {
+                int d = current.data.compareTo(item);
+                if(d == 0)
+                {
+                    current.data = item;
+                    return;
+                }
+                Node next = (d > 0) ? current.left : current.right;
+                if(next == null)
+                {
+                    if(d > 0)
+                        current.left = new Node(item);
+                    else
+                        current.right = new Node(item);
+                    return;
+                }
+                current = next;
+            }
+        }
+
+        void remove(CountingKey item)
+        {
+            Node current = root;
+            while(current != null)
+            {
+                int d = current.data.compareTo(item);
+                if(d == 0)
+                {
+                    remove(current);
+                    return;
+                }
+                current = (d > 0) ? current.left : current.right;
+            }
+        }
+
+        private void remove(Node node)
+        {
+            Node parent = findParent(node);
+            if(node.left != null && node.right != null)
+            {
+                twoChildren++;
+                Node replacement = node.right;
+                while(replacement.left != null)
+                    replacement = replacement.left;
+                CountingKey data = replacement.data;
+                remove(replacement);
+                node.data = data;
+                return;
+            }
+            Node replacement = (node.left == null) ? node.right : node.left;
+            if(parent == null)
+                root = replacement;
+            else if(parent.left == node)
+                parent.left = replacement;
+            else
+                parent.right = replacement;
+        }
+
+        private Node findParent(Node node)
+        {
+            Node tmp = root;
+            if(tmp == node)
+                return null;
+            while(true)
+            {
+                assert tmp.data.compareTo(node.data) != 0;
+                if(tmp.data.compareTo(node.data) > 0)
+                {
+                    if(tmp.left == node)
+                        return tmp;
+                    tmp = tmp.left;
+                }
+                else
+                {
+                    if(tmp.right == node)
+                        return tmp;
+                    tmp = tmp.right;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds trees of the same random keys with each storage layout and
+     * prints the heap each tree occupies per entry, excluding the keys
+     * themselves, which all the trees share.
+     * @param n the number of keys
+     */
+    private static void bytesPerEntry(int n)
+    {
+        Random random = new Random(n);
+        Integer[] keys = new Integer[n];
+        for(int i = 0; i < n; i++)
+            keys[i] = random.nextInt();
+        System.out.printf("heap per entry, %d random keys:%n", n);
+        System.out.printf("  BSTree              %5.1f bytes%n", heapPerEntry(n, () -> {
+            BSTree<Integer> tree = new BSTree<>();
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+        System.out.printf("  BSTree AVL          %5.1f bytes%n", heapPerEntry(n, () -> {
+            BSTree<Integer> tree = new BSTree<>(BSTree.Balance.AVL);
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+        System.out.printf("  BSTree SIZE         %5.1f bytes%n", heapPerEntry(n, () -> {
+            BSTree<Integer> tree = new BSTree<>(BSTree.Balance.NONE, BSTree.Augment.SIZE);
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+        System.out.printf("  BSTree FINGERPRINT  %5.1f bytes%n", heapPerEntry(n, () -> {
+            BSTree<Integer> tree = new BSTree<>(BSTree.Balance.NONE, BSTree.Augment.FINGERPRINT);
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+        System.out.printf("  PooledBSTree        %5.1f bytes%n", heapPerEntry(n, () -> {
+            PooledBSTree<Integer> tree = new PooledBSTree<>(n);
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+        System.out.printf("  IntBSTree           %5.1f bytes (keys unboxed)%n", heapPerEntry(n, () -> {
+            IntBSTree tree = new IntBSTree();
+            for(Integer key : keys)
+                tree.insert(key);
+            return tree;
+        }));
+    }
+
+    /**
+     * Measures the heap retained by the object the specified builder makes.
+     * @param n the number of entries in the object
+     * @param builder makes the object to measure
+     * @return the retained heap divided by the number of entries
+     */
+    private static double heapPerEntry(int n, Supplier<Object> builder)
+    {
+        long before = usedHeap();
+        retained = builder.get();
+        long after = usedHeap();
+        retained = null;
+        return (double) (after - before) / n;
+    }
+
+    /**
+     * Gives the heap in use after asking for a few garbage collections.
+     * @return the number of bytes in use
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 4; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Measures the throughput of a lookup-heavy mix, 90% inTree, 9% insert
+     * and 1% remove, on a ConcurrentBSTree and on a BSTree behind one lock,
+     * for each power of two below the specified number of threads and for
+     * that number.
+     * @param maxThreads the largest number of threads
+     * @param millis the length of each run in milliseconds
+     */
+    private static void concurrentScaling(int maxThreads, int millis)
+    {
+        int keys = 1 << 20;
+        System.out.println("concurrent scaling, 90% inTree / 9% insert / 1% remove, ops per ms:");
+        ArrayList<Integer> counts = new ArrayList<>();
+        for(int threads = 1; threads < maxThreads; threads *= 2)
+            counts.add(threads);
+        counts.add(maxThreads);
+        for(int threads : counts)
+        {
+            ConcurrentBSTree<Integer> concurrent = new ConcurrentBSTree<>();
+            BSTree<Integer> locked = new BSTree<>();
+            Random random = new Random(threads);
+            for(int i = 0; i < keys / 2; i++)
+            {
+                int key = random.nextInt(keys);
+                concurrent.insert(key);
+                locked.insert(key);
+            }
+            double free = throughput(threads, millis, concurrent, concurrent);
+            double global = throughput(threads, millis, locked, locked);
+            System.out.printf("  %2d threads: ConcurrentBSTree %8.0f, locked BSTree %8.0f%n",
+                    threads, free, global);
+        }
+    }
+
+    /**
+     * Runs the lookup-heavy mix on the specified tree from the specified
+     * number of threads for a while.
+     * @param threads the number of threads
+     * @param millis the length of the run in milliseconds
+     * @param tree the tree
+     * @param lock the object to lock around each call, or the tree itself
+     * when the tree needs no lock
+     * @return the number of operations completed per millisecond
+     */
+    private static double throughput(int threads, int millis, BSTreeAPI<Integer> tree, Object lock)
+    {
+        boolean locking = !(tree instanceof ConcurrentBSTree);
+        long[] counts = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        ArrayList<Thread> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++)
+        {
+            int id = t;
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try
+                {
+                    start.await();
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                long done = 0;
+                while(System.nanoTime() < deadline[0])
+                {
+                    for(int i = 0; i < 100; i++, done++)
+                    {
+                        int key = random.nextInt(1 << 20);
+                        int op = random.nextInt(100);
+                        if(locking)
+                        {
+                            synchronized(lock)
+                            {
+                                apply(tree, op, key);
+                            }
+                        }
+                        else
+                            apply(tree, op, key);
+                    }
+                }
+                counts[id] = done;
+            }));
+        }
+        workers.forEach(Thread::start);
+        deadline[0] = System.nanoTime() + millis * 1000000L;
+        start.countDown();
+        joinAll(workers);
+        long total = 0;
+        for(long count : counts)
+            total += count;
+        return (double) total / millis;
+    }
+
+    /**
+     * Applies one operation of the lookup-heavy mix to the specified tree.
+     * @param tree the tree
+     * @param op a number from 0 to 99 choosing the operation
+     * @param key the key operated on
+     */
+    private static void apply(BSTreeAPI<Integer> tree, int op, int key)
+    {
+        if(op < 90)
+            tree.inTree(key);
+        else if(op < 99)
+            tree.insert(key);
+        else
+            tree.remove(key);
+    }
+
+    /**
+     * Builds a tree of random keys by inserting them one by one, saves it
+     * and loads it back from the memory-mapped snapshot, printing the time
+     * each takes and the size of the snapshot.
+     * @param n the number of keys
+     */
+    private static void snapshotLoad(int n)
+    {
+        Random random = new Random(n);
+        long start = System.nanoTime();
+        BSTree<Integer> tree = new BSTree<>();
+        for(int i = 0; i < n; i++)
+            tree.insert(random.nextInt());
+        long inserted = System.nanoTime() - start;
+        try
+        {
+            Path file = Files.createTempFile("bstree", ".snapshot");
+            try
+            {
+                start = System.nanoTime();
+                tree.save(file, BSTreeCodec.INTEGER);
+                long saved = System.nanoTime() - start;
+                start = System.nanoTime();
+                BSTree<Integer> loaded = BSTree.load(file, BSTreeCodec.INTEGER);
+                long load = System.nanoTime() - start;
+                System.out.printf("snapshot, %d random keys: insert %d ms, save %d ms, "
+                        + "load %d ms, %.1f bytes per key%s%n", n, inserted / 1000000,
+                        saved / 1000000, load / 1000000, (double) Files.size(file) / n,
+                        loaded.equals(tree) ? "" : " (LOADED TREE DIFFERS)");
+            }
+            finally
+            {
+                Files.delete(file);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Inserts random keys into a PagedBSTree whose cache holds only a few
+     * of its pages, then looks each key up again, printing the time each
+     * takes and the size of the file.
+     * @param n the number of keys
+     * @param cachePages the number of pages the cache holds
+     */
+    private static void pagedTree(int n, int cachePages)
+    {
+        Random random = new Random(n);
+        int[] keys = new int[n];
+        for(int i = 0; i < n; i++)
+            keys[i] = random.nextInt();
+        try
+        {
+            Path file = Files.createTempFile("bstree", ".pages");
+            try(PagedBSTree<Integer> tree = new PagedBSTree<>(file, BSTreeCodec.INTEGER,
+                    4096, cachePages))
+            {
+                long start = System.nanoTime();
+                for(int key : keys)
+                    tree.insert(key);
+                tree.flush();
+                long inserted = System.nanoTime() - start;
+                start = System.nanoTime();
+                int found = 0;
+                for(int key : keys)
+                    if(tree.inTree(key))
+                        found++;
+                long looked = System.nanoTime() - start;
+                System.out.printf("paged tree, %d random keys, %d cached pages of %d: "
+                        + "insert %d ms, inTree %d ms, %d levels, %.1f bytes per key%s%n",
+                        n, cachePages, (int) (Files.size(file) / 4096), inserted / 1000000,
+                        looked / 1000000, tree.height(), (double) Files.size(file) / n,
+                        (found == n) ? "" : " (KEYS MISSING)");
+            }
+            finally
+            {
+                Files.delete(file);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for the specified threads to finish.
+     * @param threads the threads
+     */
+    private static void joinAll(List<Thread> threads)
+    {
+        for(Thread thread : threads)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of every BSTreeAPI operation of BSTree, and of sort, min, max
+ * and the copy constructor, over trees of each key distribution, size and
+ * balancing policy. Each benchmark is measured for throughput and for its
+ * latency distribution; BenchmarkMain adds the allocation rate. <br>
+ * The operations that change the tree undo their change in the same call,
+ * so the tree keeps its size: insertRemove adds an absent key and removes
+ * it, removeInsert takes a key out and puts it back as a leaf.
+ * @see KeyDistribution
+ * @see BenchmarkMain
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BSTreeOperations
+{
+
+    /**
+     * the number of probe keys, a power of two
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"1000", "10000", "100000"})
+    public int n;
+
+    /**
+     * the order the keys are inserted in and the keys operated on
+     */
+    @Param({"RANDOM", "ASCENDING", "DESCENDING", "ZIPF"})
+    public KeyDistribution keys;
+
+    /**
+     * the balancing policy of the tree
+     */
+    @Param({"NONE", "AVL", "SPLAY"})
+    public BSTree.Balance balance;
+
+    /**
+     * the keys in insertion order
+     */
+    private Integer[] order;
+
+    /**
+     * keys in the tree, in the order they are operated on
+     */
+    private Integer[] present;
+
+    /**
+     * keys not in the tree, each one more than a key in present
+     */
+    private Integer[] absent;
+
+    /**
+     * the index of the last probe key used
+     */
+    private int next;
+
+    /**
+     * the tree operated on
+     */
+    BSTree<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] inserted = keys.insertionOrder(n, 42);
+        int[] probes = keys.probes(inserted, PROBES, 7);
+        order = new Integer[n];
+        for(int i = 0; i < n; i++)
+            order[i] = inserted[i];
+        present = new Integer[PROBES];
+        absent = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+        {
+            present[i] = probes[i];
+            absent[i] = probes[i] + 1;
+        }
+        tree = new BSTree<>(balance);
+        for(Integer key : order)
+            tree.insert(key);
+    }
+
+    /**
+     * Moves on to the next probe key.
+     * @return the index of the probe key to use
+     */
+    private int nextProbe()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    /**
+     * A copy of the tree for a benchmark that destroys it, made before
+     * each call.
+     */
+    @State(Scope.Thread)
+    public static class Copy
+    {
+        BSTree<Integer> tree;
+
+        @Setup(Level.Invocation)
+        public void copy(BSTreeOperations operations)
+        {
+            tree = new BSTree<>(operations.tree);
+        }
+    }
+
+    @Benchmark
+    public BSTree<Integer> insertAll()
+    {
+        BSTree<Integer> built = new BSTree<>(balance);
+        for(Integer key : order)
+            built.insert(key);
+        return built;
+    }
+
+    @Benchmark
+    public void insertRemove()
+    {
+        Integer key = absent[nextProbe()];
+        tree.insert(key);
+        tree.remove(key);
+    }
+
+    @Benchmark
+    public void removeInsert()
+    {
+        Integer key = present[nextProbe()];
+        tree.remove(key);
+        tree.insert(key);
+    }
+
+    @Benchmark
+    public boolean inTreeHit()
+    {
+        return tree.inTree(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public boolean inTreeMiss()
+    {
+        return tree.inTree(absent[nextProbe()]);
+    }
+
+    @Benchmark
+    public Integer retrieve() throws Exception
+    {
+        return tree.retrieve(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public boolean isEmpty()
+    {
+        return tree.isEmpty();
+    }
+
+    @Benchmark
+    public int size()
+    {
+        return tree.size();
+    }
+
+    @Benchmark
+    public void inorderTraverse(Blackhole blackhole)
+    {
+        tree.inorderTraverse(x -> {
+            blackhole.consume(x);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public void preorderTraverse(Blackhole blackhole)
+    {
+        tree.preorderTraverse(x -> {
+            blackhole.consume(x);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public void postorderTraverse(Blackhole blackhole)
+    {
+        tree.postorderTraverse(x -> {
+            blackhole.consume(x);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public BSTree<Integer> trim(Copy copy)
+    {
+        copy.tree.trim();
+        return copy.tree;
+    }
+
+    @Benchmark
+    public ArrayList<String> getPaths() throws Exception
+    {
+        return tree.getPaths();
+    }
+
+    @Benchmark
+    public int diameter()
+    {
+        return tree.diameter();
+    }
+
+    @Benchmark
+    public int height()
+    {
+        return tree.height();
+    }
+
+    @Benchmark
+    public BSTree<Integer> copyConstructor()
+    {
+        return new BSTree<>(tree);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> sort()
+    {
+        return tree.sort();
+    }
+
+    @Benchmark
+    public Integer min() throws Exception
+    {
+        return tree.min();
+    }
+
+    @Benchmark
+    public Integer max() throws Exception
+    {
+        return tree.max();
+    }
+}
@@ -0,0 +1,136 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures batches of inserts and removes applied to an AVL tree by
+ * insertAll and removeAll against the same batches applied one key at a
+ * time, and the union of the tree with a tree of the batch.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchUpdates
+{
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"100000"})
+    public int n;
+
+    /**
+     * the number of keys in a batch
+     */
+    @Param({"100", "10000", "100000"})
+    public int m;
+
+    /**
+     * keys not in the tree, in random order
+     */
+    private List<Integer> batch;
+
+    /**
+     * keys in the tree, in random order
+     */
+    private List<Integer> present;
+
+    /**
+     * the tree the batches are applied to
+     */
+    private BSTree<Integer> tree;
+
+    /**
+     * a tree of the batch
+     */
+    private BSTree<Integer> batchTree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] keys = KeyDistribution.RANDOM.insertionOrder(n + m, 42);
+        tree = new BSTree<>(BSTree.Balance.AVL);
+        for(int i = 0; i < n; i++)
+            tree.insert(keys[i]);
+        present = new ArrayList<>(m);
+        for(int i = 0; i < Math.min(n, m); i++)
+            present.add(keys[i]);
+        batch = new ArrayList<>(m);
+        batchTree = new BSTree<>(BSTree.Balance.AVL);
+        for(int i = n; i < n + m; i++)
+        {
+            batch.add(keys[i] + 1);
+            batchTree.insert(keys[i] + 1);
+        }
+    }
+
+    /**
+     * A copy of the tree for a benchmark that changes it, made before
+     * each call.
+     */
+    @State(Scope.Thread)
+    public static class Copy
+    {
+        BSTree<Integer> tree;
+
+        @Setup(Level.Invocation)
+        public void copy(BatchUpdates updates)
+        {
+            tree = new BSTree<>(updates.tree);
+        }
+    }
+
+    @Benchmark
+    public int insertAll(Copy copy)
+    {
+        copy.tree.insertAll(batch);
+        return copy.tree.size();
+    }
+
+    @Benchmark
+    public int insertEach(Copy copy)
+    {
+        for(Integer key : batch)
+            copy.tree.insert(key);
+        return copy.tree.size();
+    }
+
+    @Benchmark
+    public int removeAll(Copy copy)
+    {
+        return copy.tree.removeAll(present);
+    }
+
+    @Benchmark
+    public int removeEach(Copy copy)
+    {
+        for(Integer key : present)
+            copy.tree.remove(key);
+        return copy.tree.size();
+    }
+
+    @Benchmark
+    public int union()
+    {
+        return tree.union(batchTree).size();
+    }
+}
@@ -0,0 +1,26 @@
+package bstreedemo.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line, always adding the GC
+ * profiler so that every result comes with its allocation rate. <br>
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * @see BSTreeOperations
+ */
+public class BenchmarkMain
+{
+
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
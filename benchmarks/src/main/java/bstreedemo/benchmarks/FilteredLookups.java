@@ -0,0 +1,128 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups of missing keys with the filter of the tree off and on,
+ * against hits, and the cost of a missing key to retrieve, which throws,
+ * against retrieveOrNull, which does not.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilteredLookups
+{
+
+    /**
+     * the number of probe keys, a power of two
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"100000"})
+    public int n;
+
+    /**
+     * whether the tree filters its lookups
+     */
+    @Param({"false", "true"})
+    public boolean filter;
+
+    /**
+     * keys in the tree, in the order they are looked up
+     */
+    private Integer[] present;
+
+    /**
+     * keys not in the tree, each between two that are
+     */
+    private Integer[] absent;
+
+    /**
+     * the index of the last probe key used
+     */
+    private int next;
+
+    /**
+     * the tree looked up in
+     */
+    private BSTree<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] inserted = KeyDistribution.RANDOM.insertionOrder(n, 42);
+        int[] probes = KeyDistribution.RANDOM.probes(inserted, PROBES, 7);
+        present = new Integer[PROBES];
+        absent = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+        {
+            present[i] = probes[i];
+            absent[i] = probes[i] + 1;
+        }
+        tree = new BSTree<>(BSTree.Balance.AVL);
+        for(int key : inserted)
+            tree.insert(key);
+        tree.setFilterEnabled(filter);
+    }
+
+    /**
+     * Moves on to the next probe key.
+     * @return the index of the probe key to use
+     */
+    private int nextProbe()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean inTreeHit()
+    {
+        return tree.inTree(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public boolean inTreeMiss()
+    {
+        return tree.inTree(absent[nextProbe()]);
+    }
+
+    @Benchmark
+    public Integer retrieveMiss()
+    {
+        try
+        {
+            return tree.retrieve(absent[nextProbe()]);
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Integer retrieveOrNullMiss()
+    {
+        return tree.retrieveOrNull(absent[nextProbe()]);
+    }
+}
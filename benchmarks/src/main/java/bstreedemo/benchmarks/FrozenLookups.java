@@ -0,0 +1,124 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import bstreedemo.FrozenBSTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups in an AVL tree of random keys against the same keys
+ * frozen into an array in Eytzinger order, at a size that fits in the
+ * caches and at one that does not.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrozenLookups
+{
+
+    /**
+     * the number of probe keys, a power of two
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"10000", "1000000"})
+    public int n;
+
+    /**
+     * whether the lookups go to the frozen copy of the tree
+     */
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    /**
+     * keys in the tree, in the order they are looked up
+     */
+    private Integer[] present;
+
+    /**
+     * keys not in the tree, each between two that are
+     */
+    private Integer[] absent;
+
+    /**
+     * the index of the last probe key used
+     */
+    private int next;
+
+    /**
+     * the tree looked up in when not frozen
+     */
+    private BSTree<Integer> tree;
+
+    /**
+     * the frozen copy of the tree
+     */
+    private FrozenBSTree<Integer> frozenTree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] inserted = KeyDistribution.RANDOM.insertionOrder(n, 42);
+        int[] probes = KeyDistribution.RANDOM.probes(inserted, PROBES, 7);
+        present = new Integer[PROBES];
+        absent = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+        {
+            present[i] = probes[i];
+            absent[i] = probes[i] + 1;
+        }
+        tree = new BSTree<>(BSTree.Balance.AVL);
+        for(int key : inserted)
+            tree.insert(key);
+        frozenTree = tree.freeze();
+    }
+
+    /**
+     * Moves on to the next probe key.
+     * @return the index of the probe key to use
+     */
+    private int nextProbe()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean inTreeHit()
+    {
+        Integer key = present[nextProbe()];
+        return frozen ? frozenTree.inTree(key) : tree.inTree(key);
+    }
+
+    @Benchmark
+    public boolean inTreeMiss()
+    {
+        Integer key = absent[nextProbe()];
+        return frozen ? frozenTree.inTree(key) : tree.inTree(key);
+    }
+
+    @Benchmark
+    public Integer floor()
+    {
+        Integer key = absent[nextProbe()];
+        return frozen ? frozenTree.floor(key) : tree.floor(key);
+    }
+}
@@ -0,0 +1,93 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what the instrumentation of BSTree costs the operations it
+ * records, with it off and on, over a balanced tree of random keys.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstrumentationOverhead
+{
+
+    /**
+     * the number of probe keys, a power of two
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"100000"})
+    public int n;
+
+    /**
+     * whether the tree records its operations
+     */
+    @Param({"false", "true"})
+    public boolean stats;
+
+    /**
+     * keys in the tree, in the order they are operated on
+     */
+    private Integer[] present;
+
+    /**
+     * the index of the last probe key used
+     */
+    private int next;
+
+    /**
+     * the tree operated on
+     */
+    private BSTree<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] inserted = KeyDistribution.RANDOM.insertionOrder(n, 42);
+        int[] probes = KeyDistribution.RANDOM.probes(inserted, PROBES, 7);
+        present = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+            present[i] = probes[i];
+        tree = new BSTree<>(BSTree.Balance.AVL);
+        for(int key : inserted)
+            tree.insert(key);
+        tree.setStatsEnabled(stats);
+    }
+
+    @Benchmark
+    public boolean inTree()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return tree.inTree(present[next]);
+    }
+
+    @Benchmark
+    public void removeInsert()
+    {
+        next = (next + 1) & (PROBES - 1);
+        Integer key = present[next];
+        tree.remove(key);
+        tree.insert(key);
+    }
+}
@@ -0,0 +1,84 @@
+package bstreedemo.benchmarks;
+
+import java.util.Random;
+
+/**
+ * The key sets the benchmarks build their trees from <br>
+ * Every set holds the n even keys 0, 2, ..., 2n - 2, so every odd key is
+ * absent; the sets differ in the order the keys are inserted in and in
+ * the keys the operations are applied to.
+ *
+ * @see BSTreeOperations
+ */
+public enum KeyDistribution
+{
+    /**
+     * Inserted in random order; operations on keys drawn uniformly.
+     */
+    RANDOM,
+    /**
+     * Inserted in ascending order; operations on keys drawn uniformly.
+     */
+    ASCENDING,
+    /**
+     * Inserted in descending order; operations on keys drawn uniformly.
+     */
+    DESCENDING,
+    /**
+     * Inserted in random order; operations on keys drawn from a Zipf
+     * distribution with exponent 0.99, so a few keys are most of the work.
+     */
+    ZIPF;
+
+    /**
+     * Gives the keys of a set in the order they are inserted.
+     * @param n the number of keys
+     * @param seed the seed of any random order
+     * @return the even keys below 2n
+     */
+    public int[] insertionOrder(int n, long seed)
+    {
+        int[] keys = new int[n];
+        for(int i = 0; i < n; i++)
+            keys[i] = 2 * ((this == DESCENDING) ? n - 1 - i : i);
+        if(this == RANDOM || this == ZIPF)
+        {
+            Random random = new Random(seed);
+            for(int i = n - 1; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                int swap = keys[i];
+                keys[i] = keys[j];
+                keys[j] = swap;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Gives the keys the operations of a benchmark are applied to, in turn.
+     * Under ZIPF the most popular keys are the first inserted, which are
+     * scattered at random through the key range.
+     * @param keys the keys of the set in insertion order
+     * @param count the number of keys to give
+     * @param seed the seed of the draws
+     * @return keys of the set
+     */
+    public int[] probes(int[] keys, int count, long seed)
+    {
+        int[] probes = new int[count];
+        if(this == ZIPF)
+        {
+            ZipfGenerator zipf = new ZipfGenerator(keys.length, 0.99, seed);
+            for(int i = 0; i < count; i++)
+                probes[i] = keys[zipf.next()];
+        }
+        else
+        {
+            Random random = new Random(seed);
+            for(int i = 0; i < count; i++)
+                probes[i] = keys[random.nextInt(keys.length)];
+        }
+        return probes;
+    }
+}
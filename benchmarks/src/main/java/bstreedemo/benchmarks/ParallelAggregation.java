@@ -0,0 +1,94 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the fork-join sort and aggregations of BSTree against the same
+ * work done by one thread through inorderTraverse and a sequential stream.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelAggregation
+{
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"1000000"})
+    public int n;
+
+    /**
+     * the augmentations of the tree; a tree that counts its nodes skips
+     * the counting pass of sort
+     */
+    @Param({"NONE", "SIZE"})
+    public String augment;
+
+    /**
+     * the tree aggregated over
+     */
+    private BSTree<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        tree = augment.equals("SIZE")
+                ? new BSTree<>(BSTree.Balance.AVL, BSTree.Augment.SIZE)
+                : new BSTree<>(BSTree.Balance.AVL);
+        for(int key : KeyDistribution.RANDOM.insertionOrder(n, 42))
+            tree.insert(key);
+    }
+
+    @Benchmark
+    public int sort()
+    {
+        return tree.sort().size();
+    }
+
+    @Benchmark
+    public int sortByTraversal()
+    {
+        ArrayList<Integer> list = new ArrayList<>();
+        Function<Integer, Boolean> f = x -> list.add(x);
+        tree.inorderTraverse(f);
+        return list.size();
+    }
+
+    @Benchmark
+    public long parallelSum()
+    {
+        return tree.parallelSum(x -> x);
+    }
+
+    @Benchmark
+    public long streamSum()
+    {
+        return tree.stream().mapToLong(x -> x).sum();
+    }
+
+    @Benchmark
+    public long parallelCount()
+    {
+        return tree.parallelCount(x -> (x & 3) == 0);
+    }
+}
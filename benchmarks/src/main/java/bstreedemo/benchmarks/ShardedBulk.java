@@ -0,0 +1,108 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import bstreedemo.ShardedBSTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the bulk operations of one AVL tree against a tree sharded by
+ * key range over as many shards as there are processors, whose bulk
+ * operations run a task per shard on the common fork-join pool.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShardedBulk
+{
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"1000000"})
+    public int n;
+
+    /**
+     * the number of shards; 0 for one unsharded tree
+     */
+    @Param({"0", "8"})
+    public int shards;
+
+    /**
+     * the keys in random order
+     */
+    private List<Integer> keys;
+
+    /**
+     * the unsharded tree, built once
+     */
+    private BSTree<Integer> tree;
+
+    /**
+     * the sharded tree, built once
+     */
+    private ShardedBSTree<Integer> sharded;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        keys = new ArrayList<>(n);
+        for(int key : KeyDistribution.RANDOM.insertionOrder(n, 42))
+            keys.add(key);
+        if(shards == 0)
+        {
+            tree = new BSTree<>(BSTree.Balance.AVL);
+            for(Integer key : keys)
+                tree.insert(key);
+        }
+        else
+        {
+            sharded = new ShardedBSTree<>(shards, BSTree.Balance.AVL);
+            sharded.insertAll(keys);
+        }
+    }
+
+    @Benchmark
+    public int insertAll()
+    {
+        if(shards == 0)
+        {
+            BSTree<Integer> built = new BSTree<>(BSTree.Balance.AVL);
+            for(Integer key : keys)
+                built.insert(key);
+            return built.size();
+        }
+        ShardedBSTree<Integer> built = new ShardedBSTree<>(shards, BSTree.Balance.AVL);
+        built.insertAll(keys);
+        return built.size();
+    }
+
+    @Benchmark
+    public int sort()
+    {
+        return (shards == 0) ? tree.sort().size() : sharded.sort().size();
+    }
+
+    @Benchmark
+    public int diameter()
+    {
+        return (shards == 0) ? tree.diameter() : sharded.diameter();
+    }
+}
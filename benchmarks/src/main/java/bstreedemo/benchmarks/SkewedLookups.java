@@ -0,0 +1,121 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups whose keys are drawn from a Zipf distribution, so a few
+ * keys take most of them, over a tree of random keys without balancing,
+ * with AVL balancing and with splay balancing. The lookups fall either on
+ * a hot set of a few hundred keys or on every key of the tree; the hot
+ * keys are scattered over the key order, and the skew ranges from mild to
+ * steep. Each tree runs with its hot-key cache off and on.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SkewedLookups
+{
+
+    /**
+     * the number of probe keys, a power of two
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"100000"})
+    public int n;
+
+    /**
+     * the number of keys the lookups are drawn from
+     */
+    @Param({"300", "100000"})
+    public int hot;
+
+    /**
+     * the skew of the lookups
+     */
+    @Param({"0.8", "0.99", "1.2"})
+    public double exponent;
+
+    /**
+     * how the tree is balanced
+     */
+    @Param({"NONE", "AVL", "SPLAY"})
+    public BSTree.Balance balance;
+
+    /**
+     * the number of slots of the hot-key cache, or 0 for none
+     */
+    @Param({"0", "1024"})
+    public int hotCache;
+
+    /**
+     * keys in the tree, in the order they are looked up
+     */
+    private Integer[] present;
+
+    /**
+     * the index of the last probe key used
+     */
+    private int next;
+
+    /**
+     * the tree looked up in
+     */
+    private BSTree<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build()
+    {
+        int[] inserted = KeyDistribution.RANDOM.insertionOrder(n, 42);
+        ZipfGenerator ranks = new ZipfGenerator(Math.min(hot, n), exponent, 7);
+        present = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+            present[i] = inserted[ranks.next()];
+        tree = new BSTree<>(balance);
+        tree.setHotCacheSize(hotCache);
+        for(int key : inserted)
+            tree.insert(key);
+    }
+
+    /**
+     * Moves on to the next probe key.
+     * @return the index of the probe key to use
+     */
+    private int nextProbe()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean inTree()
+    {
+        return tree.inTree(present[nextProbe()]);
+    }
+
+    @Benchmark
+    public Integer retrieve() throws Exception
+    {
+        return tree.retrieve(present[nextProbe()]);
+    }
+}
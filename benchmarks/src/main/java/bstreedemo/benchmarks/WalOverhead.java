@@ -0,0 +1,149 @@
+package bstreedemo.benchmarks;
+
+import bstreedemo.BSTree;
+import bstreedemo.BSTreeAPI;
+import bstreedemo.BSTreeCodec;
+import bstreedemo.DurableBSTree;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures inserts and removes on an AVL tree without a write-ahead log
+ * against the same changes on a DurableBSTree that forces every change
+ * before it returns and one that forces its log once per commit window.
+ * The log is kept in a temporary directory, so the cost of an fsync is
+ * that of the file system holding it.
+ * @see BSTreeOperations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WalOverhead
+{
+
+    /**
+     * the number of probe keys, a power of 2
+     */
+    private static final int PROBES = 1 << 16;
+
+    /**
+     * the number of keys in the tree
+     */
+    @Param({"100000"})
+    public int n;
+
+    /**
+     * the commit window of the log in milliseconds; off for a tree
+     * without a log
+     */
+    @Param({"off", "0", "10"})
+    public String wal;
+
+    /**
+     * keys in the tree
+     */
+    private Integer[] present;
+
+    /**
+     * keys not in the tree
+     */
+    private Integer[] absent;
+
+    /**
+     * the index of the last probe used
+     */
+    private int next;
+
+    /**
+     * the directory of the log, or null for a tree without one
+     */
+    private Path dir;
+
+    /**
+     * the tree changed
+     */
+    private BSTreeAPI<Integer> tree;
+
+    @Setup(Level.Trial)
+    public void build() throws IOException
+    {
+        int[] inserted = KeyDistribution.RANDOM.insertionOrder(n, 42);
+        int[] probes = KeyDistribution.RANDOM.probes(inserted, PROBES, 7);
+        present = new Integer[PROBES];
+        absent = new Integer[PROBES];
+        for(int i = 0; i < PROBES; i++)
+        {
+            present[i] = probes[i];
+            absent[i] = probes[i] + 1;
+        }
+        if(wal.equals("off"))
+            tree = new BSTree<>(BSTree.Balance.AVL);
+        else
+        {
+            dir = Files.createTempDirectory("bstree-wal");
+            tree = new DurableBSTree<>(dir, BSTreeCodec.INTEGER, BSTree.Balance.AVL,
+                    Long.parseLong(wal), 64L << 20);
+        }
+        for(int key : inserted)
+            tree.insert(key);
+        if(dir != null)
+            ((DurableBSTree<Integer>) tree).checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException
+    {
+        if(dir == null)
+            return;
+        ((DurableBSTree<Integer>) tree).close();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+        {
+            for(Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private int nextProbe()
+    {
+        next = (next + 1) & (PROBES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public int insertRemove()
+    {
+        Integer key = absent[nextProbe()];
+        tree.insert(key);
+        tree.remove(key);
+        return tree.size();
+    }
+
+    @Benchmark
+    public int removeInsert()
+    {
+        Integer key = present[nextProbe()];
+        tree.remove(key);
+        tree.insert(key);
+        return tree.size();
+    }
+}
@@ -0,0 +1,56 @@
+package bstreedemo.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks from a Zipf distribution <br>
+ * Rank r, counting from 0, is drawn with probability proportional to
+ * 1 / (r + 1)^s, so a few ranks take most of the draws. The cumulative
+ * probabilities are computed once and each draw is a binary search.
+ *
+ * @see KeyDistribution
+ */
+public class ZipfGenerator
+{
+
+    /**
+     * the probability of drawing each rank or a lower one
+     */
+    private final double[] cumulative;
+
+    /**
+     * the source of uniform numbers
+     */
+    private final Random random;
+
+    /**
+     * Constructs a generator of ranks from 0 to n - 1
+     * @param n the number of ranks
+     * @param exponent the skew s; 0 draws every rank equally often
+     * @param seed the seed of the uniform numbers
+     */
+    public ZipfGenerator(int n, double exponent, long seed)
+    {
+        cumulative = new double[n];
+        double sum = 0;
+        for(int r = 0; r < n; r++)
+        {
+            sum += 1 / Math.pow(r + 1, exponent);
+            cumulative[r] = sum;
+        }
+        for(int r = 0; r < n; r++)
+            cumulative[r] /= sum;
+        random = new Random(seed);
+    }
+
+    /**
+     * Draws a rank.
+     * @return a rank from 0 to n - 1
+     */
+    public int next()
+    {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min((i >= 0) ? i : -i - 1, cumulative.length - 1);
+    }
+}
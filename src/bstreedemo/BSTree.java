@@ -1,10 +1,46 @@
 package bstreedemo;
 
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
- * A binary search tree <br>
+ * A binary search tree that is optionally kept balanced <br>
  * Requires JDK 1.8 for Function
  *
  *
@@ -13,7 +49,7 @@ import java.util.function.Function;
  * @since December 2, 2015
  * @see BSTreeAPI
  */
-public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>
+public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Iterable<E>
 {
 
     /**
@@ -26,9 +62,133 @@ public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>
      */
     private int size;
 
+    /**
+     * the number of structural changes made to this tree; lets iterators
+     * detect concurrent modification
+     */
+    private int modCount;
+
+    /**
+     * the balancing policy this tree was constructed with
+     */
+    private final Balance policy;
+
+    /**
+     * the augmentations this tree was constructed with
+     */
+    private final EnumSet<Augment> augments;
+
+    /**
+     * whether each node caches the height and diameter of its subtree
+     */
+    private final boolean cachesHeights;
+
+    /**
+     * whether each node counts the nodes in its subtree
+     */
+    private final boolean countsNodes;
+
+    /**
+     * whether each node keeps a fingerprint of its subtree
+     */
+    private final boolean fingerprints;
+
+    /**
+     * whether the nodes of this tree keep their heights, as they do when
+     * the tree is balanced or augmented
+     */
+    private final boolean keepsHeights;
+
+    /**
+     * records the operations of this tree while its instrumentation is on;
+     * null while it is off
+     */
+    private BSTreeMetrics metrics;
+
+    /**
+     * turns away inTree, retrieve and remove calls for data that is
+     * certainly not in this tree; null while the filter is off
+     */
+    private BloomFilter filter;
+
+    /**
+     * the nodes last found by inTree and retrieve, each in the slot given
+     * by the hash code of its data; null while the cache is off
+     */
+    private Node[] hot;
+
+    /**
+     * the first four bytes of a snapshot, "BST1"
+     */
+    private static final int SNAPSHOT_MAGIC = 0x42535431;
+
+    /**
+     * the number of bytes of a snapshot before its shape bits
+     */
+    private static final int SNAPSHOT_HEADER = 10;
+
+    /**
+     * the number of nodes below which sort() and the parallel operations
+     * stay on the calling thread, as they do on a single processor, and
+     * below which a subtree that knows its size is not split among tasks
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    /**
+     * The balancing policies a tree can be constructed with.
+     */
+    public enum Balance {
+
+        /**
+         * No rebalancing; the shape of the tree depends on the order in
+         * which the items are inserted.
+         */
+        NONE,
+        /**
+         * AVL rebalancing; the heights of the two subtrees of every node
+         * differ by at most one, so the height of the tree stays O(log n).
+         */
+        AVL,
+        /**
+         * Splay rebalancing; every insert moves the new node to the root,
+         * and an inTree, retrieve or remove that goes deeper than log2 n
+         * moves the node it reaches there too, so keys used often are found
+         * in a few steps. Lookups of keys already near the root leave the
+         * tree alone. A lookup changes the shape of the tree, but not the
+         * order iterators see.
+         */
+        SPLAY
+    }
+
+    /**
+     * The optional data a tree can keep in each node, kept up to date by
+     * every change to the tree.
+     */
+    public enum Augment {
+
+        /**
+         * Each node caches the height and the diameter of its subtree, so
+         * height() and diameter() take constant time.
+         */
+        HEIGHT,
+        /**
+         * Each node counts the nodes in its subtree, so select(), rank() and
+         * countRange() take time proportional to the height of the tree.
+         */
+        SIZE,
+        /**
+         * Each node keeps a 64-bit fingerprint of the shape and data of its
+         * subtree, so equal trees are told apart in constant time and
+         * differingSubtrees() skips the parts two trees share.
+         */
+        FINGERPRINT
+    }
+
     /**
      * A node of a tree stores a data item and references to the child nodes to
-     * the left and to the right.
+     * the left and to the right. A tree that is balanced or augmented makes
+     * its nodes of a subclass holding the values it keeps, so the nodes of
+     * a plain tree hold no more than their links.
      */
     private class Node {
 
@@ -44,202 +204,1232 @@ public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>
          * A reference to the right subtree rooted at this node
          */
         public Node right;
+        /**
+         * A reference to the parent of this node; null at the root
+         */
+        public Node parent;
+
+        /**
+         * Copies the values this node keeps about its subtree from a node
+         * of the same class
+         *
+         * @param original the node copied from
+         */
+        void copyValues(Node original) {
+        }
+    }
+
+    /**
+     * A node of a tree that is balanced or augmented. It and its
+     * subclasses are static, so each does not add a reference to the tree
+     * of its own to the one Node holds.
+     *
+     * @param <E> the tree data type
+     */
+    private static class BalancedNode<E extends Comparable<E>> extends BSTree<E>.Node {
+
+        /**
+         * the number of nodes along the longest path from this node to a
+         * leaf
+         */
+        public int height = 1;
+
+        BalancedNode(BSTree<E> tree) {
+            tree.super();
+        }
+
+        @Override
+        void copyValues(BSTree<E>.Node original) {
+            height = ((BalancedNode<E>) original).height;
+        }
+    }
+
+    /**
+     * A node of a tree that caches heights or counts nodes.
+     *
+     * @param <E> the tree data type
+     */
+    private static class AugmentedNode<E extends Comparable<E>> extends BalancedNode<E> {
+
+        /**
+         * the number of nodes along the longest path in the subtree rooted
+         * at this node; only maintained when the tree caches heights
+         */
+        public int diameter = 1;
+        /**
+         * the number of nodes in the subtree rooted at this node; only
+         * maintained when the tree counts nodes
+         */
+        public int count = 1;
+
+        AugmentedNode(BSTree<E> tree) {
+            super(tree);
+        }
+
+        @Override
+        void copyValues(BSTree<E>.Node original) {
+            super.copyValues(original);
+            diameter = ((AugmentedNode<E>) original).diameter;
+            count = ((AugmentedNode<E>) original).count;
+        }
+    }
+
+    /**
+     * A node of a tree that keeps fingerprints.
+     *
+     * @param <E> the tree data type
+     */
+    private static class FingerprintNode<E extends Comparable<E>> extends AugmentedNode<E> {
+
+        /**
+         * the fingerprint of the subtree rooted at this node
+         */
+        public long hash;
+
+        FingerprintNode(BSTree<E> tree) {
+            super(tree);
+        }
+
+        @Override
+        void copyValues(BSTree<E>.Node original) {
+            super.copyValues(original);
+            hash = ((FingerprintNode<E>) original).hash;
+        }
+    }
+
+    /**
+     * Makes a node of the class this tree keeps its values in
+     *
+     * @return a new node with no data or links
+     */
+    private Node newNode() {
+        if (fingerprints) {
+            return new FingerprintNode<>(this);
+        } else if (cachesHeights || countsNodes) {
+            return new AugmentedNode<>(this);
+        } else if (keepsHeights) {
+            return new BalancedNode<>(this);
+        }
+        return new Node();
     }
 
     /**
      * Constructs an empty tree
      */
     public BSTree() {
+        this(Balance.NONE);
+    }
+
+    /**
+     * Constructs an empty tree that is kept balanced according to the
+     * specified policy and keeps the specified augmentations in its nodes
+     *
+     * @param policy the balancing policy of this tree
+     * @param augments the augmentations kept in the nodes of this tree
+     */
+    public BSTree(Balance policy, Augment... augments) {
         root = null;
         size = 0;
+        this.policy = policy;
+        this.augments = EnumSet.noneOf(Augment.class);
+        for (Augment augment : augments) {
+            this.augments.add(augment);
+        }
+        cachesHeights = this.augments.contains(Augment.HEIGHT);
+        countsNodes = this.augments.contains(Augment.SIZE);
+        fingerprints = this.augments.contains(Augment.FINGERPRINT);
+        keepsHeights = policy != Balance.NONE || !this.augments.isEmpty();
     }
     
     /**
      * This method creates a binary search tree with the same
      * structure and contents as the specified binary search tree.
+     * The nodes are copied directly, without comparing any data.
      * @param tree a binary search tree
      */
     public BSTree(BSTree<E> tree)
     {
-    	copyTree(tree.root);
+    	this(tree.policy, tree.augments.toArray(new Augment[0]));
+    	root = copyTree(tree.root);
+    	size = tree.size;
     }
 
     /**
-    * An auxiliary method of the copy constructor that inserts the
-    * data from the specified node into this tree and recursively
-    * inserts the data of the left and right subtrees of this node
-    * as the tree is traversed pre-order.
+    * An auxiliary method of the copy constructor that copies the
+    * nodes of the specified subtree as the subtree is traversed
+    * pre-order. The copy is walked in step with the original, so
+    * the parent of each new node is always at hand.
     * @param originalSubtreeRoot a root of a subtree in the
     * original tree.
+    * @return the root of the copy, or null if the subtree is empty
+    */
+    private Node copyTree(Node originalSubtreeRoot)
+    {
+    	if(originalSubtreeRoot == null)
+    		return null;
+    	Node copyRoot = copyNode(originalSubtreeRoot, null);
+    	Node original = originalSubtreeRoot;
+    	Node copy = copyRoot;
+    	while(true)
+    	{
+    		if(original.left != null && copy.left == null)
+    		{
+    			copy.left = copyNode(original.left, copy);
+    			original = original.left;
+    			copy = copy.left;
+    		}
+    		else if(original.right != null && copy.right == null)
+    		{
+    			copy.right = copyNode(original.right, copy);
+    			original = original.right;
+    			copy = copy.right;
+    		}
+    		else if(original == originalSubtreeRoot)
+    			return copyRoot;
+    		else
+    		{
+    			original = original.parent;
+    			copy = copy.parent;
+    		}
+    	}
+    }
+
+    /**
+    * An auxiliary method of copyTree that copies the data and the
+    * cached values of the specified node, but not its children.
+    * @param original a node of the original tree
+    * @param parent the parent of the copy
+    * @return the copy of the node
+    */
+    private Node copyNode(Node original, Node parent)
+    {
+    	Node copy = newNode();
+    	copy.data = original.data;
+    	copy.parent = parent;
+    	copy.copyValues(original);
+    	return copy;
+    }
+
+    /**
+    * Creates a perfectly balanced binary search tree from a list whose
+    * elements are in strictly ascending order, in O(n) time.
+    * @param <E> the tree data type
+    * @param items the elements of the tree in ascending order
+    * @return a new tree holding the elements, with no balancing policy
+    * @throws BSTreeException when the elements are not in strictly
+    * ascending order
+    */
+    public static <E extends Comparable<E>> BSTree<E> fromSorted(List<E> items) throws BSTreeException
+    {
+    	return fromSorted(items, Balance.NONE);
+    }
+
+    /**
+    * Creates a perfectly balanced binary search tree from a list whose
+    * elements are in strictly ascending order, in O(n) time. A list
+    * that is not RandomAccess, such as a LinkedList, is copied into an
+    * array list first.
+    * @param <E> the tree data type
+    * @param items the elements of the tree in ascending order
+    * @param policy the balancing policy of the new tree
+    * @param augments the augmentations kept in the nodes of the new tree
+    * @return a new tree holding the elements
+    * @throws BSTreeException when the elements are not in strictly
+    * ascending order
+    */
+    public static <E extends Comparable<E>> BSTree<E> fromSorted(List<E> items, Balance policy,
+    		Augment... augments) throws BSTreeException
+    {
+    	/* the check and the build index the list, and a get on a linked
+    	 list is O(n) */
+    	if(!(items instanceof RandomAccess))
+    		items = new ArrayList<>(items);
+    	for(int i = 1; i < items.size(); i++)
+    		if(items.get(i - 1).compareTo(items.get(i)) >= 0)
+    			throw new BSTreeException("Strictly ascending elements expected on fromSorted().");
+    	BSTree<E> tree = new BSTree<>(policy, augments);
+    	tree.root = tree.buildBalanced(items, 0, items.size() - 1, null);
+    	tree.size = items.size();
+    	return tree;
+    }
+
+    /**
+    * Creates a perfectly balanced binary search tree from an array whose
+    * elements are in strictly ascending order, in O(n) time.
+    * @param <E> the tree data type
+    * @param items the elements of the tree in ascending order
+    * @return a new tree holding the elements, with no balancing policy
+    * @throws BSTreeException when the elements are not in strictly
+    * ascending order
+    */
+    public static <E extends Comparable<E>> BSTree<E> fromSortedArray(E[] items) throws BSTreeException
+    {
+    	return fromSorted(Arrays.asList(items), Balance.NONE);
+    }
+
+    /**
+    * Creates a perfectly balanced binary search tree from an array whose
+    * elements are in strictly ascending order, in O(n) time.
+    * @param <E> the tree data type
+    * @param items the elements of the tree in ascending order
+    * @param policy the balancing policy of the new tree
+    * @param augments the augmentations kept in the nodes of the new tree
+    * @return a new tree holding the elements
+    * @throws BSTreeException when the elements are not in strictly
+    * ascending order
     */
-    private void copyTree(Node originalSubtreeRoot)
+    public static <E extends Comparable<E>> BSTree<E> fromSortedArray(E[] items, Balance policy,
+    		Augment... augments) throws BSTreeException
     {
-    	insert(originalSubtreeRoot.data);
-    	if(originalSubtreeRoot.left != null)
-    		copyTree(originalSubtreeRoot.left);
-    	if(originalSubtreeRoot.right != null)
-    		copyTree(originalSubtreeRoot.right);
+    	return fromSorted(Arrays.asList(items), policy, augments);
+    }
+
+    /**
+    * A recursive auxiliary method of fromSorted that links the middle
+    * element of the specified range above the subtrees built from the
+    * elements on either side of it. The recursion is only as deep as
+    * the balanced tree it builds.
+    * @param items the elements in ascending order, in a RandomAccess
+    * list
+    * @param lo the index of the first element of the range
+    * @param hi the index of the last element of the range
+    * @param parent the parent of the subtree being built
+    * @return the root of the subtree, or null if the range is empty
+    */
+    private Node buildBalanced(List<E> items, int lo, int hi, Node parent)
+    {
+    	if(lo > hi)
+    		return null;
+    	int mid = (lo + hi) >>> 1;
+    	Node node = newNode();
+    	node.data = items.get(mid);
+    	node.parent = parent;
+    	node.left = buildBalanced(items, lo, mid - 1, node);
+    	node.right = buildBalanced(items, mid + 1, hi, node);
+    	update(node);
+    	return node;
+    }
+
+    /**
+    * Inserts the specified items as insert would, one after another: an
+    * item equal to an element of the tree replaces it, and of equal items
+    * the last one stays. A batch of m items small next to the n elements
+    * of the tree, m log n &lt; 2n, is inserted one item at a time; a larger
+    * batch is sorted and merged with the elements of the tree in one pass,
+    * and the tree is rebuilt perfectly balanced from the merge, in
+    * O(n + m log m) time.
+    * @param items the items to insert
+    */
+    public void insertAll(Collection<? extends E> items)
+    {
+    	if(isSmallBatch(items.size()))
+    	{
+    		for(E item : items)
+    			insert(item);
+    		return;
+    	}
+    	ArrayList<E> batch = sortedBatch(items);
+    	ArrayList<E> merged = new ArrayList<>(size + batch.size());
+    	int j = 0;
+    	for(Node node = first(root); node != null; node = successor(node))
+    	{
+    		while(j < batch.size() && batch.get(j).compareTo(node.data) < 0)
+    			merged.add(batch.get(j++));
+    		if(j < batch.size() && batch.get(j).compareTo(node.data) == 0)
+    			merged.add(batch.get(j++));
+    		else
+    			merged.add(node.data);
+    	}
+    	merged.addAll(batch.subList(j, batch.size()));
+    	rebuild(merged);
     }
     
-    @Override
-    public void trim()
+    /**
+    * Deletes the elements of the tree equal to any of the specified items.
+    * A small batch is removed one item at a time, a larger one by a single
+    * merge with the elements of the tree and a balanced rebuild, as in
+    * insertAll.
+    * @param items the items to delete
+    * @return the number of elements deleted
+    */
+    public int removeAll(Collection<? extends E> items)
     {
-    	if(root != null)
-    		trim(root);
+    	int before = size;
+    	if(isSmallBatch(items.size()))
+    	{
+    		for(E item : items)
+    			remove(item);
+    		return before - size;
+    	}
+    	return keep(sortedBatch(items), false);
     }
     
     /**
-    * A recursive auxiliary method for the trim method.
-    * @param subtreeRoot a node at which a subtree is rooted
+    * Deletes the elements of the tree equal to none of the specified
+    * items, by a single merge with the elements of the tree and, if any
+    * are deleted, a balanced rebuild.
+    * @param items the items whose equals are kept
+    * @return the number of elements deleted
     */
-    private void trim(Node subtreeRoot)
+    public int retainAll(Collection<? extends E> items)
     {
-    	if(subtreeRoot.left == null && subtreeRoot.right == null)
-    		remove(subtreeRoot.data);
-    	if(subtreeRoot.left != null)
-    		trim(subtreeRoot.left);
-    	if(subtreeRoot.right != null)
-    		trim(subtreeRoot.right);
+    	return keep(sortedBatch(items), true);
     }
     
-    @Override
-    public ArrayList<String> getPaths() throws BSTreeException
+    /**
+    * Gives a new tree holding the elements of this tree and of the
+    * specified tree; of two equal elements, the one in this tree. The new
+    * tree has the balancing policy and augmentations of this tree and is
+    * built perfectly balanced from one merge of the two trees in order, in
+    * O(n + m) time.
+    * @param other a binary search tree
+    * @return the union of the trees
+    */
+    public BSTree<E> union(BSTree<E> other)
     {
-    	if(root == null)
-    		throw new BSTreeException("getPaths() called on empty tree.");
-    	ArrayList<String> paths = new ArrayList<String>();
-    	String pStr = new String();
-    	getPaths(root, pStr, paths);
-    	return paths;
+    	ArrayList<E> merged = new ArrayList<>(size + other.size);
+    	Node b = other.first(other.root);
+    	for(Node a = first(root); a != null; a = successor(a))
+    	{
+    		while(b != null && b.data.compareTo(a.data) < 0)
+    		{
+    			merged.add(b.data);
+    			b = other.successor(b);
+    		}
+    		if(b != null && b.data.compareTo(a.data) == 0)
+    			b = other.successor(b);
+    		merged.add(a.data);
+    	}
+    	for(; b != null; b = other.successor(b))
+    		merged.add(b.data);
+    	return emptyCopy().rebuild(merged);
     }
     
     /**
-    * A recursive auxiliary method for the getPath method.
-    * @param node a node along the root-to-leaf path
-    * @param pStr a string representing a path
-    * @param paths an array list whose elements are the
-    * root-to-leaf paths in the tree in the format
-    ^ n1->n2->n3...nk, where n1 is the root and nk a leaf.
+    * Gives a new tree holding the elements of this tree equal to elements
+    * of the specified tree, with the balancing policy and augmentations of
+    * this tree. When one tree is much smaller, each of its elements is
+    * looked up in the other, in O(m log n) time; otherwise the trees are
+    * merged in order, in O(n + m) time.
+    * @param other a binary search tree
+    * @return the intersection of the trees
     */
-    private void getPaths(Node node, String pStr, ArrayList<String> paths)
+    public BSTree<E> intersection(BSTree<E> other)
     {
-    	pStr = pStr + node.data;
-    	if(node.left != null || node.right != null)
-    		pStr = pStr + "->";
-    	if(node.left != null)
+    	ArrayList<E> common = new ArrayList<>();
+    	if(isSmallBatch(other.size))
+    	{
+    		for(Node b = other.first(other.root); b != null; b = other.successor(b))
+    		{
+    			Node a = search(b.data);
+    			if(a != null)
+    				common.add(a.data);
+    		}
+    	}
+    	else if(other.isSmallBatch(size))
     	{
-    		getPaths(node.left, pStr, paths);
+    		for(Node a = first(root); a != null; a = successor(a))
+    			if(other.search(a.data) != null)
+    				common.add(a.data);
     	}
-    	if(node.right != null)
+    	else
     	{
-    		getPaths(node.right, pStr, paths);
+    		Node b = other.first(other.root);
+    		for(Node a = first(root); a != null && b != null; a = successor(a))
+    		{
+    			while(b != null && b.data.compareTo(a.data) < 0)
+    				b = other.successor(b);
+    			if(b != null && b.data.compareTo(a.data) == 0)
+    				common.add(a.data);
+    		}
     	}
-    	if(node.left == null && node.right == null)
-    		paths.add(pStr);
+    	return emptyCopy().rebuild(common);
     }
     
-    @Override
-    public int diameter()
+    /**
+    * Gives a new tree holding the elements of this tree equal to no
+    * element of the specified tree, with the balancing policy and
+    * augmentations of this tree. Each element of this tree is looked up in
+    * the other when that is much larger, in O(n log m) time; otherwise the
+    * trees are merged in order, in O(n + m) time.
+    * @param other a binary search tree
+    * @return the difference of the trees
+    */
+    public BSTree<E> difference(BSTree<E> other)
     {
-    	if(root == null)
-    		return 0;
+    	ArrayList<E> rest = new ArrayList<>();
+    	if(other.isSmallBatch(size))
+    	{
+    		for(Node a = first(root); a != null; a = successor(a))
+    			if(other.search(a.data) == null)
+    				rest.add(a.data);
+    	}
     	else
-    		return diameter(root);
+    	{
+    		Node b = other.first(other.root);
+    		for(Node a = first(root); a != null; a = successor(a))
+    		{
+    			while(b != null && b.data.compareTo(a.data) < 0)
+    				b = other.successor(b);
+    			if(b == null || b.data.compareTo(a.data) != 0)
+    				rest.add(a.data);
+    		}
+    	}
+    	return emptyCopy().rebuild(rest);
     }
-
+    
+    /**
+    * Tells whether a batch of the specified number of items is better
+    * applied to this tree one item at a time: m descents of about log n
+    * steps cost less than one pass over the n elements that allocates a
+    * node for each, measured at about two descent steps per element. A
+    * batch thus costs O(min(m log n, n + m log m)). That is not the
+    * O(m log(n/m + 1)) of split and join: for m between about n / log n
+    * and n it is larger by up to a factor of log n / log log n, and a
+    * sorted batch is sorted again rather than inserted from a finger.
+    * @param m the number of items in the batch
+    * @return true if m log n &lt; 2n
+    */
+    private boolean isSmallBatch(int m)
+    {
+    	return (long) m * (32 - Integer.numberOfLeadingZeros(size)) < 2L * size;
+    }
+    
     /**
-    * A recursive auxiliary method of the diameter method that
-    * gives the diameter of the subtree rooted at the specified node.
-    * @param node in the tree
-    * @return the diameter of the subtree rooted at the specified node
+    * Sorts a batch of items and drops every item followed by an equal one,
+    * so the last of equal items stays
+    * @param items the batch
+    * @return the items in strictly ascending order
     */
-    private int diameter(Node node)
+    private ArrayList<E> sortedBatch(Collection<? extends E> items)
     {
-    	if(node.left == null && node.right == null)
-    		return 1;
-    	else if(node.left != null && node.right != null)
+    	ArrayList<E> batch = new ArrayList<>(items);
+    	batch.sort(null);
+    	int distinct = 0;
+    	for(int i = 0; i < batch.size(); i++)
     	{
-    		/*
-    		 * Compares the diameter of the current node (1 + maxPath(node.left) + maxPath(node.right)) with the 
-    		 * diameters of both its left and right subtrees, returning the maximum of all three. This ensures the
-    		 * method will find the longest diameter in the entire tree, instead of just the diameter through the root.
-    		 */
-    		return Math.max(Math.max(1 + maxPath(node.left) + maxPath(node.right), diameter(node.left)), diameter(node.right));
+    		if(distinct > 0 && batch.get(distinct - 1).compareTo(batch.get(i)) == 0)
+    			batch.set(distinct - 1, batch.get(i));
+    		else
+    			batch.set(distinct++, batch.get(i));
     	}
-    	else if(node.left != null)
-    		return 1 + diameter(node.left);
-    	else
-    		return 1 + diameter(node.right);
+    	batch.subList(distinct, batch.size()).clear();
+    	return batch;
     }
-
+    
     /**
-    * Computes the maximum root-to-leaf path of the subtree rooted at
-    * the specified node.
-    * @param node the root of a subtree
-    * @return the number of nodes along the longest path of the subtree
-    * rooted at the specified node.
+    * Keeps the elements of the tree that are, or are not, equal to items
+    * of a sorted batch, by one merge, and rebuilds the tree balanced if
+    * any element is deleted
+    * @param batch items in strictly ascending order
+    * @param matching whether the elements equal to items are kept
+    * @return the number of elements deleted
     */
-    private int maxPath(Node node)
-    {
-    	if(node.left != null && node.right != null)
-    		return 1 + Math.max(maxPath(node.left), maxPath(node.right));
-    	else if(node.left != null)
-    		return 1 + maxPath(node.left);
-    	else if(node.right != null)
-    		return 1 + maxPath(node.right);
-    	else
-    		return 1;
+    private int keep(ArrayList<E> batch, boolean matching)
+    {
+    	ArrayList<E> kept = new ArrayList<>(size);
+    	int j = 0;
+    	for(Node node = first(root); node != null; node = successor(node))
+    	{
+    		while(j < batch.size() && batch.get(j).compareTo(node.data) < 0)
+    			j++;
+    		boolean matches = j < batch.size() && batch.get(j).compareTo(node.data) == 0;
+    		if(matches == matching)
+    			kept.add(node.data);
+    	}
+    	int removed = size - kept.size();
+    	if(removed > 0)
+    		rebuild(kept);
+    	return removed;
     }
     
-    @Override
-    public boolean isEmpty() {
-        return (size == 0);
+    /**
+    * Gives an empty tree with the balancing policy and augmentations of
+    * this tree
+    * @return a new empty tree
+    */
+    private BSTree<E> emptyCopy()
+    {
+    	return new BSTree<>(policy, augments.toArray(new Augment[0]));
+    }
+    
+    /**
+    * Replaces the elements of this tree by the specified ones, in a
+    * perfectly balanced tree, and builds its filter again if it has one
+    * @param items the elements in strictly ascending order
+    * @return this tree
+    */
+    private BSTree<E> rebuild(List<E> items)
+    {
+    	root = buildBalanced(items, 0, items.size() - 1, null);
+    	size = items.size();
+    	modCount++;
+    	if(filter != null)
+    		rebuildFilter();
+    	forgetHot();
+    	reshaped();
+    	return this;
     }
 
-    @Override
-    public void insert(E item) {
-        Node newNode = new Node();
-        newNode.data = item;
-        if (size == 0) {
-            root = newNode;
-            size++;
-        } else {
-            Node tmp = root;
-            while (true) {
-                int d = tmp.data.compareTo(item);
-                if (d == 0) { /* Key already exists. (update) */
-
-                    tmp.data = item;
-                    return;
-                } else if (d > 0) {
-                    if (tmp.left == null) { /* If the key is less than tmp */
-
-                        tmp.left = newNode;
-                        size++;
-                        return;
-                    } else { /* continue searching for insertion pt. */
-
-                        tmp = tmp.left;
-                    }
-                } else {
-                    if (tmp.right == null) {/* If the key is greater than tmp */
-
-                        tmp.right = newNode;
-                        size++;
-                        return;
-                    } else { /* continue searching for insertion point*/
-
-                        tmp = tmp.right;
-                    }
+    /**
+     * Writes a snapshot of this tree to the specified channel: a header
+     * holding the size, balancing policy and augmentations of the tree,
+     * then two bits per node in preorder telling whether the node has a
+     * left and a right child, then the data of the nodes in preorder, each
+     * behind its length in bytes. The snapshot holds the shape of the tree
+     * as it is, so load() rebuilds it without comparing any data.
+     *
+     * @param channel the channel written to
+     * @param codec encodes the data of the nodes
+     * @throws IOException when writing to the channel fails
+     */
+    public void writeTo(WritableByteChannel channel, BSTreeCodec<? super E> codec)
+            throws IOException {
+        ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+        int mask = 0;
+        for (Augment augment : augments) {
+            mask |= 1 << augment.ordinal();
+        }
+        out.putInt(SNAPSHOT_MAGIC).putInt(size).put((byte) policy.ordinal()).put((byte) mask);
+        int bits = 0;
+        int count = 0;
+        for (Node node = root; node != null; node = nextPreorder(node, root)) {
+            bits = (bits << 2) | ((node.left != null) ? 2 : 0) | ((node.right != null) ? 1 : 0);
+            if (++count == 4) {
+                if (!out.hasRemaining()) {
+                    drain(out, channel);
                 }
+                out.put((byte) bits);
+                bits = 0;
+                count = 0;
             }
         }
-    }
-
-    @Override
-    public boolean inTree(E item) {
-        Node tmp;
-        if (size == 0) {
+        if (count > 0) {
+            if (!out.hasRemaining()) {
+                drain(out, channel);
+            }
+            out.put((byte) (bits << (8 - 2 * count)));
+        }
+        ByteBuffer key = ByteBuffer.allocate(64);
+        for (Node node = root; node != null; node = nextPreorder(node, root)) {
+            while (true) {
+                try {
+                    key.clear();
+                    codec.encode(node.data, key);
+                    break;
+                } catch (BufferOverflowException e) {
+                    key = ByteBuffer.allocate(2 * key.capacity());
+                }
+            }
+            key.flip();
+            if (out.remaining() < 5 + key.remaining()) {
+                drain(out, channel);
+            }
+            putVarint(out, key.remaining());
+            if (out.remaining() < key.remaining()) {
+                drain(out, channel);
+                while (key.hasRemaining()) {
+                    channel.write(key);
+                }
+            } else {
+                out.put(key);
+            }
+        }
+        drain(out, channel);
+    }
+
+    /**
+     * Writes a snapshot of this tree to the specified file, replacing it
+     *
+     * @param file the file written to
+     * @param codec encodes the data of the nodes
+     * @throws IOException when writing the file fails
+     * @see #writeTo
+     */
+    public void save(Path file, BSTreeCodec<? super E> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeTo(channel, codec);
+        }
+    }
+
+    /**
+     * Creates a tree from a snapshot written by save() or writeTo(). The
+     * file is memory-mapped and the nodes are linked as the shape bits
+     * describe, in one pass and without comparing any data, so the tree
+     * has the shape, balancing policy and augmentations of the tree that
+     * was saved. The order of the data is not checked; the snapshot is
+     * trusted to come from a tree.
+     *
+     * @param <E> the tree data type
+     * @param file the file read from
+     * @param codec decodes the data of the nodes
+     * @return the tree in the snapshot
+     * @throws IOException when reading the file fails or it is not a
+     * snapshot of a tree
+     */
+    public static <E extends Comparable<E>> BSTree<E> load(Path file, BSTreeCodec<E> codec)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = new MappedInput(channel, 0, length).require(SNAPSHOT_HEADER);
+            if (header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a tree snapshot: " + file);
+            }
+            int size = header.getInt();
+            int policy = header.get();
+            int mask = header.get();
+            if (size < 0 || policy < 0 || policy >= Balance.values().length
+                    || (mask >>> Augment.values().length) != 0) {
+                throw new IOException("Corrupt tree snapshot header: " + file);
+            }
+            EnumSet<Augment> augments = EnumSet.noneOf(Augment.class);
+            for (Augment augment : Augment.values()) {
+                if ((mask & (1 << augment.ordinal())) != 0) {
+                    augments.add(augment);
+                }
+            }
+            BSTree<E> tree = new BSTree<>(Balance.values()[policy],
+                    augments.toArray(new Augment[0]));
+            long keys = SNAPSHOT_HEADER + (2L * size + 7) / 8;
+            tree.readNodes(new MappedInput(channel, SNAPSHOT_HEADER, keys),
+                    new MappedInput(channel, keys, length), size, codec);
+            return tree;
+        }
+    }
+
+    /**
+     * An auxiliary method of load that links the nodes of a snapshot in
+     * preorder. Each node goes where the previous node left a free slot:
+     * below the previous node if it has a left child, else below the
+     * nearest node still waiting for its right child. The cached data is
+     * then computed in one post-order pass.
+     *
+     * @param shape reads the shape bits, two per node
+     * @param keys reads the length-prefixed data of the nodes
+     * @param n the number of nodes
+     * @param codec decodes the data of the nodes
+     * @throws IOException when the snapshot does not hold n nodes
+     */
+    private void readNodes(MappedInput shape, MappedInput keys, int n, BSTreeCodec<E> codec)
+            throws IOException {
+        ArrayDeque<Node> waiting = new ArrayDeque<>();
+        Node parent = null;
+        boolean leftSide = false;
+        int bits = 0;
+        for (int i = 0; i < n; i++) {
+            if ((i & 3) == 0) {
+                bits = shape.get();
+            }
+            int children = (bits >> (6 - 2 * (i & 3))) & 3;
+            int length = keys.getVarint();
+            if (length < 0 || length > keys.remaining()) {
+                throw new StreamCorruptedException("Key length " + length + " out of range in snapshot.");
+            }
+            ByteBuffer in = keys.require(length);
+            int end = in.position() + length;
+            Node node = newNode();
+            node.data = codec.decode(in, length);
+            if (in.position() != end) {
+                throw new IOException("Codec did not read the " + length + " bytes of a key.");
+            }
+            node.parent = parent;
+            if (parent == null) {
+                if (i > 0) {
+                    throw new IOException("Snapshot shape ends before its last node.");
+                }
+                root = node;
+            } else if (leftSide) {
+                parent.left = node;
+            } else {
+                parent.right = node;
+            }
+            if ((children & 1) != 0) {
+                waiting.push(node);
+            }
+            if ((children & 2) != 0) {
+                parent = node;
+                leftSide = true;
+            } else {
+                parent = waiting.poll();
+                leftSide = false;
+            }
+        }
+        if (parent != null) {
+            root = null;
+            throw new IOException("Snapshot shape needs more nodes than it holds.");
+        }
+        size = n;
+        if (keepsHeights) {
+            for (Node node = firstPostorder(root); node != null; node = nextPostorder(node)) {
+                update(node);
+            }
+        }
+    }
+
+    /**
+     * Writes the bytes in the specified buffer to the channel and clears it
+     *
+     * @param out a buffer being filled
+     * @param channel the channel written to
+     * @throws IOException when writing to the channel fails
+     */
+    private static void drain(ByteBuffer out, WritableByteChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Writes an unsigned int seven bits per byte, low bits first, setting
+     * the high bit of each byte but the last
+     *
+     * @param out the buffer written to
+     * @param value a non-negative int
+     */
+    static void putVarint(ByteBuffer out, int value) {
+        while (value >= 0x80) {
+            out.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    @Override
+    public void trim()
+    {
+    	trimLevels(1);
+    }
+    
+    /**
+    * Deletes the specified number of levels from the bottom of this
+    * tree: every node whose subtree is at most k nodes high. trim()
+    * is trimLevels(1). The tree is visited once, post-order; each
+    * node learns the heights of its children from a stack, cuts off
+    * the children that are low enough, and refreshes its cached data.
+    * Leaving out whole bottom levels keeps an AVL tree balanced.
+    * @param k the number of levels to delete
+    * @return the number of nodes deleted
+    */
+    public int trimLevels(int k)
+    {
+    	return trimLevels(k, null);
+    }
+    
+    /**
+    * Deletes the specified number of levels from the bottom of this
+    * tree, as trimLevels(k) does, handing each deleted item to the
+    * specified consumer
+    * @param k the number of levels to delete
+    * @param deleted takes the deleted items, or null
+    * @return the number of nodes deleted
+    */
+    int trimLevels(int k, Consumer<? super E> deleted)
+    {
+    	if(root == null || k <= 0)
+    		return 0;
+    	int[] heights = new int[16];
+    	int top = 0;
+    	int removed = 0;
+    	for(Node node = firstPostorder(root); ; node = nextPostorder(node))
+    	{
+    		int right = (node.right != null) ? heights[--top] : 0;
+    		int left = (node.left != null) ? heights[--top] : 0;
+    		int height = 1 + Math.max(left, right);
+    		if(height <= k)
+    		{
+    			removed++;
+    			if(deleted != null)
+    				deleted.accept(node.data);
+    		}
+    		else
+    		{
+    			if(right != 0 && right <= k)
+    				node.right = null;
+    			if(left != 0 && left <= k)
+    				node.left = null;
+    			update(node);
+    		}
+    		if(top == heights.length)
+    			heights = Arrays.copyOf(heights, 2 * top);
+    		heights[top++] = height;
+    		if(node == root)
+    			break;
+    	}
+    	if(heights[0] <= k)
+    		root = null;
+    	size -= removed;
+    	if(removed > 0)
+    	{
+    		modCount++;
+    		if(filter != null)
+    			rebuildFilter();
+    		forgetHot();
+    		reshaped();
+    	}
+    	return removed;
+    }
+    
+    /**
+    * Deletes every node deeper than the specified depth, the root
+    * being at depth 1, so the tree is at most that high afterwards.
+    * Only the nodes that stay are visited: once pre-order to cut off
+    * the subtrees below the depth, and once post-order to refresh
+    * their cached data. Cutting a balanced tree at one depth keeps it
+    * balanced.
+    * @param depth the depth of the deepest nodes kept
+    * @return the number of nodes deleted
+    */
+    public int pruneBelowDepth(int depth)
+    {
+    	if(root == null)
+    		return 0;
+    	int kept = 0;
+    	if(depth > 0)
+    	{
+    		ArrayDeque<Node> nodes = new ArrayDeque<>();
+    		int[] depths = new int[16];
+    		nodes.push(root);
+    		depths[0] = 1;
+    		while(!nodes.isEmpty())
+    		{
+    			Node node = nodes.pop();
+    			int nodeDepth = depths[nodes.size()];
+    			kept++;
+    			if(nodeDepth == depth)
+    			{
+    				node.left = null;
+    				node.right = null;
+    				continue;
+    			}
+    			if(nodes.size() + 2 > depths.length)
+    				depths = Arrays.copyOf(depths, 2 * depths.length);
+    			if(node.right != null)
+    			{
+    				depths[nodes.size()] = nodeDepth + 1;
+    				nodes.push(node.right);
+    			}
+    			if(node.left != null)
+    			{
+    				depths[nodes.size()] = nodeDepth + 1;
+    				nodes.push(node.left);
+    			}
+    		}
+    	}
+    	else
+    		root = null;
+    	int removed = size - kept;
+    	if(removed > 0)
+    	{
+    		for(Node node = firstPostorder(root); node != null; node = nextPostorder(node))
+    			update(node);
+    		size = kept;
+    		modCount++;
+    		if(filter != null)
+    			rebuildFilter();
+    		forgetHot();
+    		reshaped();
+    	}
+    	return removed;
+    }
+    
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException
+    {
+    	if(root == null)
+    		throw new BSTreeException("getPaths() called on empty tree.");
+    	ArrayList<String> paths = new ArrayList<String>();
+    	forEachPath(path -> paths.add(path.toString()));
+    	return paths;
+    }
+    
+    /**
+    * Passes each root-to-leaf path of the tree, in the format
+    * n1->n2->n3...nk, to the specified visitor. All the paths are
+    * built in one buffer that is cut back to the branching node
+    * before the next path is appended, so the visitor is handed the
+    * buffer itself and must copy it to keep it. Each node is appended
+    * through StringBuilder.append(Object), which makes a String of its
+    * data by toString; forEachPath(BiConsumer, Consumer) appends the
+    * data through a formatter instead. Does nothing if the tree is empty.
+    * @param visitor receives each path, leftmost first
+    */
+    public void forEachPath(Consumer<? super CharSequence> visitor)
+    {
+    	forEachPath(StringBuilder::append, visitor);
+    }
+    
+    /**
+    * Passes each root-to-leaf path of the tree to the specified visitor
+    * as forEachPath(Consumer) does, appending the data of each node to
+    * the buffer through the specified formatter. A formatter that appends
+    * primitives or characters, such as (path, key) -&gt;
+    * path.append(key.intValue()), makes no String per node visit. Does
+    * nothing if the tree is empty.
+    * @param formatter appends the data of a node to the path
+    * @param visitor receives each path, leftmost first
+    */
+    public void forEachPath(BiConsumer<? super StringBuilder, ? super E> formatter,
+    		Consumer<? super CharSequence> visitor)
+    {
+    	if(root == null)
+    		return;
+    	StringBuilder path = new StringBuilder();
+    	ArrayDeque<Node> nodes = new ArrayDeque<>();
+    	int[] lengths = new int[16];
+    	nodes.push(root);
+    	lengths[0] = 0;
+    	while(!nodes.isEmpty())
+    	{
+    		Node node = nodes.pop();
+    		path.setLength(lengths[nodes.size()]);
+    		formatter.accept(path, node.data);
+    		if(node.left == null && node.right == null)
+    		{
+    			visitor.accept(path);
+    			continue;
+    		}
+    		path.append("->");
+    		if(nodes.size() + 2 > lengths.length)
+    			lengths = Arrays.copyOf(lengths, 2 * lengths.length);
+    		if(node.right != null)
+    		{
+    			lengths[nodes.size()] = path.length();
+    			nodes.push(node.right);
+    		}
+    		if(node.left != null)
+    		{
+    			lengths[nodes.size()] = path.length();
+    			nodes.push(node.left);
+    		}
+    	}
+    }
+    
+    /**
+    * Writes each root-to-leaf path of the tree, in the format
+    * n1->n2->n3...nk, on a line of its own to the specified sink,
+    * without making a String of any path; the data of each node is
+    * made a String by toString.
+    * @param out the sink the paths are appended to
+    * @throws IOException when the sink fails
+    */
+    public void writePaths(Appendable out) throws IOException
+    {
+    	writePaths(StringBuilder::append, out);
+    }
+    
+    /**
+    * Writes each root-to-leaf path of the tree on a line of its own to
+    * the specified sink, as writePaths(Appendable) does, appending the
+    * data of each node through the specified formatter.
+    * @param formatter appends the data of a node to the path
+    * @param out the sink the paths are appended to
+    * @throws IOException when the sink fails
+    */
+    public void writePaths(BiConsumer<? super StringBuilder, ? super E> formatter,
+    		Appendable out) throws IOException
+    {
+    	try
+    	{
+    		forEachPath(formatter, path -> {
+    			try
+    			{
+    				out.append(path).append('\n');
+    			}
+    			catch(IOException e)
+    			{
+    				throw new UncheckedIOException(e);
+    			}
+    		});
+    	}
+    	catch(UncheckedIOException e)
+    	{
+    		throw e.getCause();
+    	}
+    }
+    
+    /**
+    * Gives the number of root-to-leaf paths of the tree, the number
+    * of its leaves, without building any path. The length of the
+    * longest path is height().
+    * @return the number of paths, or 0 if the tree is empty
+    */
+    public int pathCount()
+    {
+    	int leaves = 0;
+    	for(Node node = root; node != null; node = nextPreorder(node, root))
+    		if(node.left == null && node.right == null)
+    			leaves++;
+    	return leaves;
+    }
+    
+    @Override
+    public int diameter()
+    {
+    	if(root == null)
+    		return 0;
+    	else if(cachesHeights)
+    		return diameter(root);
+    	else
+    		return heightAndDiameter(root)[1];
+    }
+
+    @Override
+    public int height()
+    {
+    	if(root == null)
+    		return 0;
+    	else if(cachesHeights || policy != Balance.NONE)
+    		return height(root);
+    	else
+    		return heightAndDiameter(root)[0];
+    }
+
+    /**
+    * An auxiliary method of the diameter and height methods that
+    * visits the subtree rooted at the specified node once, post-order.
+    * The height of each visited subtree is pushed on a stack, from
+    * which its parent pops the heights of its children, so the longest
+    * path through every node, 1 + height(left) + height(right), is
+    * known when the node is visited.
+    * @param subtreeRoot the root of a subtree in the tree
+    * @return the height and the diameter of the subtree
+    */
+    private int[] heightAndDiameter(Node subtreeRoot)
+    {
+    	int[] heights = new int[16];
+    	int top = 0;
+    	int longest = 0;
+    	for(Node node = firstPostorder(subtreeRoot); ; node = nextPostorder(node))
+    	{
+    		int right = (node.right != null) ? heights[--top] : 0;
+    		int left = (node.left != null) ? heights[--top] : 0;
+    		longest = Math.max(longest, 1 + left + right);
+    		if(top == heights.length)
+    			heights = Arrays.copyOf(heights, 2 * top);
+    		heights[top++] = 1 + Math.max(left, right);
+    		if(node == subtreeRoot)
+    			return new int[] {heights[0], longest};
+    	}
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    @Override
+    public void insert(E item) {
+        int before = size;
+        if (metrics == null) {
+            insertNode(item);
+        } else {
+            long start = System.nanoTime();
+            int comparisons = insertNode(item);
+            metrics.record(BSTreeStats.Operation.INSERT, comparisons, start);
+            publish((size != before) ? comparisons + 1 : 0);
+        }
+        if (filter != null && size != before) {
+            if (size > filter.capacity()) {
+                rebuildFilter();
+            } else {
+                filter.add(item);
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method that does the work of insert
+     *
+     * @param item the value to be inserted
+     * @return the number of comparisons made
+     */
+    private int insertNode(E item) {
+        int comparisons = 0;
+        Node newNode = newNode();
+        newNode.data = item;
+        if (fingerprints) {
+            update(newNode);
+        }
+        if (size == 0) {
+            root = newNode;
+            size++;
+            modCount++;
+            return comparisons;
+        } else {
+            Node tmp = root;
+            while (true) {
+                int d = tmp.data.compareTo(item);
+                comparisons++;
+                if (d == 0) { /* Key already exists. (update) */
+
+                    tmp.data = item;
+                    if (fingerprints) {
+                        rebalance(tmp);
+                    }
+                    if (policy == Balance.SPLAY) {
+                        splay(tmp);
+                    }
+                    return comparisons;
+                } else if (d > 0) {
+                    if (tmp.left == null) { /* If the key is less than tmp */
+
+                        tmp.left = newNode;
+                        newNode.parent = tmp;
+                        size++;
+                        modCount++;
+                        rebalance(tmp);
+                        if (policy == Balance.SPLAY) {
+                            splay(newNode);
+                        }
+                        return comparisons;
+                    } else { /* continue searching for insertion pt. */
+
+                        tmp = tmp.left;
+                    }
+                } else {
+                    if (tmp.right == null) {/* If the key is greater than tmp */
+
+                        tmp.right = newNode;
+                        newNode.parent = tmp;
+                        size++;
+                        modCount++;
+                        rebalance(tmp);
+                        if (policy == Balance.SPLAY) {
+                            splay(newNode);
+                        }
+                        return comparisons;
+                    } else { /* continue searching for insertion point*/
+
+                        tmp = tmp.right;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        Node tmp;
+        if (filteredOut(item, BSTreeStats.Operation.IN_TREE)) {
+            return false;
+        }
+        if (hot != null) {
+            return hotAccess(item, BSTreeStats.Operation.IN_TREE) != null;
+        }
+        if (metrics != null) {
+            long start = System.nanoTime();
+            boolean found = access(item) != null;
+            metrics.record(BSTreeStats.Operation.IN_TREE, metrics.path, start);
+            publish(0);
+            return found;
+        }
+        if (policy == Balance.SPLAY) {
+            return access(item) != null;
+        }
+        if (size == 0) {
             return false;
         }
         /*find where it is */
@@ -264,186 +1454,1404 @@ public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>
         }
     }
 
-    @Override
-    public void remove(E item) {
-        Node nodeptr;
-        nodeptr = search(item);
-        if (nodeptr != null) {
-            remove(nodeptr);
-            size--;
-        }
+    @Override
+    public void remove(E item) {
+        Node nodeptr;
+        if (filteredOut(item, BSTreeStats.Operation.REMOVE)) {
+            return;
+        }
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        nodeptr = (metrics != null || policy == Balance.SPLAY) ? access(item) : search(item);
+        if (nodeptr != null) {
+            E data = nodeptr.data;
+            remove(nodeptr);
+            size--;
+            if (filter != null) {
+                filter.remove(data);
+            }
+        }
+        if (metrics != null) {
+            metrics.record(BSTreeStats.Operation.REMOVE, metrics.path, start);
+            if (nodeptr != null) {
+                metrics.heightExact = false;
+            }
+            publish(0);
+        }
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        inorderTraverse(root, func);
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        Node nodeptr = lookup(key);
+        if (nodeptr == null) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return nodeptr.data;
+    }
+
+    /**
+     * Gives a reference to the item in the tree with the specified key, like
+     * retrieve, but answers a missing key with null instead of an exception
+     *
+     * @param key the key to the item to be retrieved
+     * @return the item with the specified key, or null if there is none
+     */
+    public E retrieveOrNull(E key) {
+        Node nodeptr = lookup(key);
+        return (nodeptr == null) ? null : nodeptr.data;
+    }
+
+    /**
+     * Gives the item in the tree with the specified key, like retrieve, but
+     * answers a missing key with an empty Optional instead of an exception
+     *
+     * @param key the key to the item to be retrieved
+     * @return the item with the specified key, if there is one
+     */
+    public Optional<E> find(E key) {
+        return Optional.ofNullable(retrieveOrNull(key));
+    }
+
+    /**
+     * An auxiliary method that does the search of retrieve, retrieveOrNull
+     * and find, recorded as a retrieve
+     *
+     * @param key a data key
+     * @return a reference to the Node object whose data has the specified
+     * key, or null if there is none
+     */
+    private Node lookup(E key) {
+        if (filteredOut(key, BSTreeStats.Operation.RETRIEVE)) {
+            return null;
+        }
+        if (hot != null) {
+            return hotAccess(key, BSTreeStats.Operation.RETRIEVE);
+        }
+        if (metrics != null) {
+            long start = System.nanoTime();
+            Node nodeptr = access(key);
+            metrics.record(BSTreeStats.Operation.RETRIEVE, metrics.path, start);
+            publish(0);
+            return nodeptr;
+        }
+        return (policy == Balance.SPLAY) ? access(key) : search(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * An auxiliary method for the inorderTraver method that follows the
+     * in-order successors of the leftmost node of the specified subtree
+     *
+     * @param node a reference to a Node object
+     * @param func a function that is applied to the data in each node as the
+     * tree is traversed in order.
+     */
+    private void inorderTraverse(Node node, Function func) {
+        for (node = first(node); node != null; node = successor(node)) {
+            func.apply(node.data);
+        }
+    }
+
+    /**
+     * An auxiliary method that support the remove method. The parent and, for
+     * a node with two children, the in-order successor are reached through
+     * the parent links and child links, so no keys are compared.
+     *
+     * @param node a reference to a Node object in this tree
+     */
+    private void remove(Node node) {
+        Node replacement;
+        if (hot != null) {
+            forgetHot(node.data);
+        }
+        if ((node.left != null) && (node.right != null)) {
+            /* move the successor's data up and unlink the successor instead */
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            if (hot != null) {
+                forgetHot(successor.data);
+            }
+            node.data = successor.data;
+            node = successor;
+        }
+        if (node.left == null) {
+            replacement = node.right;
+        } else {
+            replacement = node.left;
+        }
+        Node parent = node.parent;
+        replaceChild(parent, node, replacement);
+        rebalance(parent);
+        modCount++;
+    }
+
+    /**
+     * An auxiliary method that links the specified replacement into the
+     * place of the specified child of the specified parent
+     *
+     * @param parent the parent of the child, or null if the child is the root
+     * @param child a child of the parent
+     * @param replacement the node taking the place of the child; may be null
+     */
+    private void replaceChild(Node parent, Node child, Node replacement) {
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == child) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+    }
+
+    /**
+     * Gives the height of the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the cached height of the node, or 0 for an empty subtree
+     */
+    private int height(Node node) {
+        return (node == null) ? 0 : ((BalancedNode<E>) node).height;
+    }
+
+    /**
+     * Gives the number of nodes in the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the cached count of the node, or 0 for an empty subtree
+     */
+    private int count(Node node) {
+        return (node == null) ? 0 : ((AugmentedNode<E>) node).count;
+    }
+
+    /**
+     * Gives the diameter of the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the cached diameter of the node, or 0 for an empty subtree
+     */
+    private int diameter(Node node) {
+        return (node == null) ? 0 : ((AugmentedNode<E>) node).diameter;
+    }
+
+    /**
+     * Recomputes the cached height and, when the tree keeps them, the cached
+     * diameter and node count of the specified node from its children
+     *
+     * @param node a reference to a Node object
+     */
+    private void update(Node node) {
+        if (!keepsHeights) {
+            return;
+        }
+        int left = height(node.left);
+        int right = height(node.right);
+        ((BalancedNode<E>) node).height = 1 + Math.max(left, right);
+        if (cachesHeights) {
+            int diameter = Math.max(1 + left + right,
+                    Math.max(diameter(node.left), diameter(node.right)));
+            ((AugmentedNode<E>) node).diameter = diameter;
+        }
+        if (countsNodes) {
+            ((AugmentedNode<E>) node).count = 1 + count(node.left) + count(node.right);
+        }
+        if (fingerprints) {
+            ((FingerprintNode<E>) node).hash = combine(node.data, hash(node.left), hash(node.right));
+        }
+    }
+
+    /**
+     * Gives the fingerprint of the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the cached fingerprint, or 0 for an empty subtree
+     */
+    private long hash(Node node) {
+        return (node == null) ? 0 : ((FingerprintNode<E>) node).hash;
+    }
+
+    /**
+     * Gives the fingerprint of a subtree from its root's data and the
+     * fingerprints of its two subtrees. The children are weighted by
+     * different odd constants, so mirrored subtrees differ, and the sum
+     * is finished with the 64-bit MurmurHash3 mixer.
+     *
+     * @param data the data in the root of the subtree
+     * @param left the fingerprint of the left subtree, 0 if empty
+     * @param right the fingerprint of the right subtree, 0 if empty
+     * @return the fingerprint of the subtree
+     */
+    private static long combine(Object data, long left, long right) {
+        long h = data.hashCode() * 0x9E3779B97F4A7C15L
+                + left * 0xC2B2AE3D27D4EB4FL
+                + right * 0x165667B19E3779F9L + 1;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Rotates the subtree rooted at the specified node to the left
+     *
+     * @param node a node whose right child is not null
+     * @return the new root of the subtree
+     */
+    private Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        if (pivot.left != null) {
+            pivot.left.parent = node;
+        }
+        replaceChild(node.parent, node, pivot);
+        pivot.left = node;
+        node.parent = pivot;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Rotates the subtree rooted at the specified node to the right
+     *
+     * @param node a node whose left child is not null
+     * @return the new root of the subtree
+     */
+    private Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        if (pivot.right != null) {
+            pivot.right.parent = node;
+        }
+        replaceChild(node.parent, node, pivot);
+        pivot.right = node;
+        node.parent = pivot;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Moves the specified node to the root by rotations, two levels at a
+     * time: a node on the same side of its parent as the parent is of the
+     * grandparent rotates the grandparent first (zig-zig), otherwise the
+     * parent first (zig-zag). Every rotation refreshes the cached data of
+     * the two nodes it moves, so the whole path ends up refreshed.
+     *
+     * @param node a node of this tree, or null
+     */
+    private void splay(Node node) {
+        if (node == null) {
+            return;
+        }
+        while (node.parent != null) {
+            Node parent = node.parent;
+            Node grand = parent.parent;
+            if (grand == null) {
+                rotateUp(node);
+            } else if ((grand.left == parent) == (parent.left == node)) {
+                rotateUp(parent);
+                rotateUp(node);
+            } else {
+                rotateUp(node);
+                rotateUp(node);
+            }
+        }
+    }
+
+    /**
+     * Rotates the specified node above its parent
+     *
+     * @param node a node whose parent is not null
+     */
+    private void rotateUp(Node node) {
+        Node parent = node.parent;
+        if (parent.left == node) {
+            rotateRight(parent);
+        } else {
+            rotateLeft(parent);
+        }
+    }
+
+    /**
+     * Walks from the specified node up to the root, refreshing the cached
+     * data and rotating any node that is out of balance. Does nothing
+     * unless the tree is balanced or augmented.
+     *
+     * @param node the lowest node whose subtree changed, or null
+     */
+    private void rebalance(Node node) {
+        if (policy == Balance.NONE && augments.isEmpty()) {
+            return;
+        }
+        while (node != null) {
+            update(node);
+            if (policy != Balance.AVL) {
+                node = node.parent;
+                continue;
+            }
+            int balance = height(node.left) - height(node.right);
+            if (balance > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    rotateLeft(node.left);
+                }
+                node = rotateRight(node);
+            } else if (balance < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    rotateRight(node.right);
+                }
+                node = rotateLeft(node);
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * An auxiliary method that supports the search method
+     *
+     * @param key a data key
+     * @return a reference to the Node object whose data has the specified key.
+     */
+    private Node search(E key) {
+        Node current = root;
+        while (current != null) {
+            int d = current.data.compareTo(key);
+            if (d == 0) {
+                return current;
+            } else if (d > 0) {
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The search method of a tree that records its operations or splays.
+     * The number of comparisons made is left in metrics.path, and in a
+     * splay tree the node found, or the last node reached when the key is
+     * missing, is splayed to the root once the path is longer than log2 of
+     * the size; splaying shallow nodes costs rotations and gains little.
+     *
+     * @param key a data key
+     * @return a reference to the Node object whose data has the specified key.
+     */
+    private Node access(E key) {
+        int comparisons = 0;
+        Node last = null;
+        Node current = root;
+        while (current != null) {
+            int d = current.data.compareTo(key);
+            comparisons++;
+            if (d == 0) {
+                break;
+            }
+            last = current;
+            current = (d > 0) ? current.left : current.right;
+        }
+        if (metrics != null) {
+            metrics.path = comparisons;
+        }
+        if (policy == Balance.SPLAY && comparisons > 32 - Integer.numberOfLeadingZeros(size)) {
+            splay((current != null) ? current : last);
+        }
+        return current;
+    }
+
+    /**
+     * Turns the instrumentation of this tree on or off. While it is on,
+     * insert, inTree, retrieve and remove record their comparisons, path
+     * lengths and latencies; while it is off they pay one null check.
+     * Turning it off discards what was recorded.
+     *
+     * @param enabled whether to record the operations of this tree
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = newMetrics();
+        }
+    }
+
+    /**
+     * Makes the metrics of this tree, recording its size and height
+     *
+     * @return the metrics
+     */
+    private BSTreeMetrics newMetrics() {
+        BSTreeMetrics created = new BSTreeMetrics();
+        created.size = size;
+        created.height = height();
+        return created;
+    }
+
+    /**
+     * Records the size and height of this tree in its metrics after an
+     * operation, where the MXBean reads them from other threads. A tree
+     * that keeps the heights of its nodes records its height as it is; a
+     * plain tree raises the recorded height to the depth of a node just
+     * inserted, and after a remove or a trim, which may lower its height,
+     * keeps the recorded height as a bound until a reader asks for it,
+     * when it measures itself again.
+     *
+     * @param depth the depth of a node just inserted, or 0
+     */
+    private void publish(int depth) {
+        metrics.size = size;
+        if (keepsHeights) {
+            metrics.height = height(root);
+        } else if (!metrics.heightExact && metrics.heightWanted) {
+            metrics.height = height();
+            metrics.heightExact = true;
+            metrics.heightWanted = false;
+        } else if (depth > metrics.height) {
+            metrics.height = depth;
+        }
+    }
+
+    /**
+     * Records in the metrics of this tree, if it has them, that a bulk
+     * change may have lowered its height
+     */
+    private void reshaped() {
+        if (metrics != null) {
+            metrics.heightExact = false;
+            publish(0);
+        }
+    }
+
+    /**
+     * Turns the filter of this tree on or off. While it is on, a counting
+     * Bloom filter over the data of the tree answers most inTree, retrieve
+     * and remove calls for missing data without a search; the rest pay
+     * for a few probes of the filter more. insert and remove keep the
+     * filter up to date, and it is rebuilt when the tree outgrows it or
+     * loses nodes by trimming. The filter relies on items that compare
+     * equal having equal hash codes. A call it turns away is recorded by
+     * the instrumentation with no comparisons.
+     *
+     * @param enabled whether to filter the lookups of this tree
+     */
+    public void setFilterEnabled(boolean enabled) {
+        if (!enabled) {
+            filter = null;
+        } else if (filter == null) {
+            rebuildFilter();
+        }
+    }
+
+    /**
+     * Tells whether the filter of this tree is on
+     *
+     * @return true if this tree filters its lookups
+     */
+    public boolean isFilterEnabled() {
+        return filter != null;
+    }
+
+    /**
+     * Builds the filter again from the data in this tree, sized for twice
+     * as many items
+     */
+    private void rebuildFilter() {
+        filter = new BloomFilter(2 * size);
+        for (Node node = first(root); node != null; node = successor(node)) {
+            filter.add(node.data);
+        }
+    }
+
+    /**
+     * Tells whether the filter turns away the specified item, and records
+     * the call if so
+     *
+     * @param item a data key
+     * @param operation the operation looking for the item
+     * @return true if the item is certainly not in this tree
+     */
+    private boolean filteredOut(E item, BSTreeStats.Operation operation) {
+        if (filter == null || filter.mightContain(item)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.record(operation, 0, System.nanoTime());
+        }
+        return true;
+    }
+
+    /**
+     * Turns the hot-key cache of this tree on or off. While it is on,
+     * inTree and retrieve first look in a table of the nodes they last
+     * found, indexed by the hash code of the key, and answer a key found
+     * there after one comparison; a key not found there is searched for as
+     * usual and its node takes the slot. A few hundred keys that take most
+     * of the lookups are thus answered in constant time, whatever their
+     * depth. remove forgets the nodes it unlinks or gives other data, and
+     * the cache is emptied when the tree is rebuilt or trimmed. The cache
+     * relies on items that compare equal having equal hash codes.
+     *
+     * @param slots the number of nodes the cache holds, rounded up to a
+     * power of two, or 0 to turn it off
+     * @throws IllegalArgumentException when slots is negative or more
+     * than 2^30
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setHotCacheSize(int slots) {
+        if (slots < 0 || slots > 1 << 30) {
+            throw new IllegalArgumentException("Hot cache size out of range: " + slots);
+        }
+        hot = (slots == 0) ? null
+                : new BSTree.Node[Integer.highestOneBit(Math.max(1, 2 * slots - 1))];
+    }
+
+    /**
+     * Gives the number of nodes the hot-key cache of this tree holds
+     *
+     * @return the number of slots, or 0 if the cache is off
+     */
+    public int getHotCacheSize() {
+        return (hot == null) ? 0 : hot.length;
+    }
+
+    /**
+     * Gives the slot of the hot-key cache for the specified key
+     *
+     * @param key a data key
+     * @return an index in hot
+     */
+    private int hotSlot(E key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (hot.length - 1);
+    }
+
+    /**
+     * The search method of inTree and retrieve while the hot-key cache is
+     * on. A hit is recorded by the instrumentation as one comparison; a
+     * miss is searched for, and splayed, as without the cache.
+     *
+     * @param key a data key
+     * @param operation the operation looking for the key
+     * @return a reference to the Node object whose data has the specified
+     * key, or null if there is none
+     */
+    private Node hotAccess(E key, BSTreeStats.Operation operation) {
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        int slot = hotSlot(key);
+        Node node = hot[slot];
+        int comparisons = 1;
+        if (node == null || node.data.compareTo(key) != 0) {
+            node = (metrics != null || policy == Balance.SPLAY) ? access(key) : search(key);
+            if (node != null) {
+                hot[slot] = node;
+            }
+            comparisons = (metrics != null) ? metrics.path : 0;
+        }
+        if (metrics != null) {
+            metrics.record(operation, comparisons, start);
+            publish(0);
+        }
+        return node;
+    }
+
+    /**
+     * Empties the slot of the hot-key cache for the specified data, which
+     * is leaving the node it is in
+     *
+     * @param data the data of a node
+     */
+    private void forgetHot(E data) {
+        hot[hotSlot(data)] = null;
+    }
+
+    /**
+     * Empties the hot-key cache, if this tree has one, after nodes were
+     * dropped or given other data in bulk
+     */
+    private void forgetHot() {
+        if (hot != null) {
+            Arrays.fill(hot, null);
+        }
+    }
+
+    /**
+     * Tells whether the instrumentation of this tree is on
+     *
+     * @return true if this tree records its operations
+     */
+    public boolean isStatsEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * Discards what the instrumentation of this tree has recorded so far.
+     * The MXBean does not call it from its own thread; it asks the tree to
+     * discard the record at its next operation instead.
+     */
+    public void resetStats() {
+        if (metrics != null) {
+            metrics.clear();
+        }
+    }
+
+    /**
+     * Gives a snapshot of what the instrumentation of this tree has
+     * recorded, with the current size and height of the tree. The height
+     * takes one pass over the tree unless it caches heights or is balanced.
+     *
+     * @return the statistics of this tree; no calls if it is not recording
+     */
+    public BSTreeStats stats() {
+        if (metrics != null && metrics.resetWanted) {
+            metrics.clear();
+        }
+        BSTreeMetrics recorded = (metrics != null) ? metrics : new BSTreeMetrics();
+        return recorded.snapshot(size, height());
+    }
+
+    /**
+     * Turns the instrumentation of this tree on and registers a BSTreeMXBean
+     * for it with the platform MBean server, under the object name
+     * bstreedemo:type=BSTree,name= followed by the specified name.
+     *
+     * @param name the name of this tree among the registered trees
+     * @return the object name the tree was registered under
+     * @throws JMException when the name is taken or not a valid object name
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        setStatsEnabled(true);
+        ObjectName objectName = new ObjectName("bstreedemo:type=BSTree,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new Monitor(), objectName);
+        return objectName;
+    }
+
+    /**
+     * The MXBean through which JMX clients see this tree.
+     */
+    private class Monitor implements BSTreeMXBean {
+
+        /**
+         * the metrics of the tree when it was last seen with them
+         */
+        private BSTreeMetrics seen = metrics;
+
+        /**
+         * Gives the metrics of the tree, or the last ones it had while its
+         * instrumentation is off
+         *
+         * @return the metrics
+         */
+        private BSTreeMetrics seen() {
+            BSTreeMetrics current = metrics;
+            if (current != null) {
+                seen = current;
+            }
+            return seen;
+        }
+
+        @Override
+        public int getSize() {
+            return seen().size;
+        }
+
+        @Override
+        public int getHeight() {
+            BSTreeMetrics recorded = seen();
+            recorded.heightWanted = true;
+            return recorded.height;
+        }
+
+        @Override
+        public boolean isStatsEnabled() {
+            return BSTree.this.isStatsEnabled();
+        }
+
+        @Override
+        public BSTreeStats getStats() {
+            boolean recording = (metrics != null);
+            BSTreeMetrics recorded = seen();
+            recorded.heightWanted = true;
+            return (recording && !recorded.resetWanted ? recorded : new BSTreeMetrics())
+                    .snapshot(recorded.size, recorded.height);
+        }
+
+        @Override
+        public void resetStats() {
+            seen().resetWanted = true;
+        }
+    }
+
+    @Override
+    public void postorderTraverse(Function func)
+    {
+        postorderTraverse(root, func);
+    }
+    
+    @Override
+    public void preorderTraverse(Function func)
+    {
+        preorderTraverse(root, func);
+    }
+    
+    /**
+     * traverses the binary search tree in postorder
+     * and apply the specify function to the data in each node visited
+     * @param node node visited
+     * @param func function applied
+     */
+    private void postorderTraverse(Node node, Function func)
+    {
+        for (node = firstPostorder(node); node != null; node = nextPostorder(node))
+            func.apply(node.data);
+    }
+    
+    /**
+     * traverses the binary search tree in preorder
+     * and apply the specify function to the data in each node visited
+     * @param node node visited
+     * @param func function applied
+     */
+    private void preorderTraverse(Node node, Function func)
+    {
+        for (Node start = node; node != null; node = nextPreorder(node, start))
+            func.apply(node.data);
+    }
+
+    /**
+     * Gives the leftmost node of the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the node with the smallest data in the subtree, or null
+     */
+    private Node first(Node node) {
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gives the in-order successor of the specified node
+     *
+     * @param node a reference to a Node object in this tree
+     * @return the node with the next larger data, or null
+     */
+    private Node successor(Node node) {
+        if (node.right != null) {
+            return first(node.right);
+        }
+        while (node.parent != null && node.parent.right == node) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    /**
+     * Gives the rightmost node of the subtree rooted at the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the node with the largest data in the subtree, or null
+     */
+    private Node last(Node node) {
+        if (node != null) {
+            while (node.right != null) {
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gives the in-order predecessor of the specified node
+     *
+     * @param node a reference to a Node object in this tree
+     * @return the node with the next smaller data, or null
+     */
+    private Node predecessor(Node node) {
+        if (node.left != null) {
+            return last(node.left);
+        }
+        while (node.parent != null && node.parent.left == node) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    /**
+     * Gives the pre-order successor of the specified node within the
+     * subtree rooted at the specified start node
+     *
+     * @param node a reference to a Node object in the subtree
+     * @param start the root of the subtree being traversed
+     * @return the next node visited in preorder, or null
+     */
+    private Node nextPreorder(Node node, Node start) {
+        if (node.left != null) {
+            return node.left;
+        }
+        if (node.right != null) {
+            return node.right;
+        }
+        while (node != start) {
+            Node parent = node.parent;
+            if (parent.left == node && parent.right != null) {
+                return parent.right;
+            }
+            node = parent;
+        }
+        return null;
+    }
+
+    /**
+     * Gives the first node visited in postorder in the subtree rooted at
+     * the specified node
+     *
+     * @param node a reference to a Node object or null
+     * @return the leftmost leaf-first node of the subtree, or null
+     */
+    private Node firstPostorder(Node node) {
+        if (node != null) {
+            while (node.left != null || node.right != null) {
+                node = (node.left != null) ? node.left : node.right;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gives the post-order successor of the specified node. The traversal
+     * ends at the root of the subtree it started in, whose successor is the
+     * node above it; callers traversing a subtree stop there themselves.
+     *
+     * @param node a reference to a Node object in this tree
+     * @return the next node visited in postorder, or null after the root
+     */
+    private Node nextPostorder(Node node) {
+        Node parent = node.parent;
+        if (parent != null && parent.left == node && parent.right != null) {
+            return firstPostorder(parent.right);
+        }
+        return parent;
+    }
+    
+    /**
+     * Gives an iterator over the elements of this tree in ascending order.
+     * The iterator supports remove and fails fast on concurrent changes.
+     *
+     * @return an in-order iterator
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new NodeIterator(first(root), null, false);
+    }
+
+    /**
+     * Gives a spliterator over the elements of this tree in ascending order.
+     * It splits at the root and then at the subtrees of its bounds.
+     *
+     * @return a SORTED, DISTINCT and ORDERED spliterator, also SIZED until
+     * it is split
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new NodeSpliterator(null, null, 0, -1, 0);
+    }
+
+    /**
+     * Gives a sequential stream of the elements of this tree in ascending
+     * order
+     *
+     * @return a stream over this tree
+     */
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * An iterator that follows the successors, or the predecessors, of the
+     * nodes from a start node up to, but excluding, a fence node.
+     */
+    private class NodeIterator implements Iterator<E> {
+
+        /**
+         * the node holding the next element, or null at the end
+         */
+        private Node next;
+        /**
+         * the first node not to visit, or null for the end of the tree
+         */
+        private Node fence;
+        /**
+         * whether the nodes are visited in descending order
+         */
+        private final boolean descending;
+        /**
+         * the node holding the element last returned, or null
+         */
+        private Node lastReturned;
+        /**
+         * the modification count this iterator expects
+         */
+        private int expectedModCount = modCount;
+
+        NodeIterator(Node first, Node fence, boolean descending) {
+            this.next = (first == fence) ? null : first;
+            this.fence = fence;
+            this.descending = descending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastReturned = next;
+            next = descending ? predecessor(next) : successor(next);
+            if (next == fence) {
+                next = null;
+            }
+            return lastReturned.data;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            /* a node with two children takes over its successor's data and
+             the successor's node is unlinked instead */
+            Node unlinked = lastReturned;
+            if (lastReturned.left != null && lastReturned.right != null) {
+                unlinked = successor(lastReturned);
+            }
+            if (filter != null) {
+                filter.remove(lastReturned.data);
+            }
+            BSTree.this.remove(lastReturned);
+            size--;
+            reshaped();
+            if (next == unlinked) {
+                next = lastReturned;
+            }
+            if (fence == unlinked) {
+                fence = lastReturned;
+            }
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * A spliterator over the nodes from current up to, but excluding, fence.
+     */
+    private class NodeSpliterator implements Spliterator<E> {
+
+        /**
+         * the first node to visit, or null before the first use of the
+         * top-level spliterator
+         */
+        private Node current;
+        /**
+         * the first node not to visit, or null for the end of the tree
+         */
+        private final Node fence;
+        /**
+         * 0 for the top-level spliterator, -1 for a split-off prefix and 1
+         * for the remaining suffix
+         */
+        private int side;
+        /**
+         * the estimated number of elements, or -1 before the first use
+         */
+        private int est;
+        /**
+         * the modification count this spliterator expects
+         */
+        private int expectedModCount;
+
+        NodeSpliterator(Node current, Node fence, int side, int est, int expectedModCount) {
+            this.current = current;
+            this.fence = fence;
+            this.side = side;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * Binds the top-level spliterator to the tree on its first use
+         *
+         * @return the estimated number of elements
+         */
+        private int getEstimate() {
+            if (est < 0) {
+                est = size;
+                current = first(root);
+                expectedModCount = modCount;
+            }
+            return est;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            if (est < 0) {
+                getEstimate();
+            }
+            Node e = current, f = fence;
+            Node s = (e == null || e == f) ? null
+                    : (side == 0) ? root
+                    : (side > 0) ? e.right
+                    : (f != null) ? f.left : null;
+            if (s != null && s != e && s != f && e.data.compareTo(s.data) < 0) {
+                side = 1;
+                return new NodeSpliterator(e, current = s, -1, est >>>= 1, expectedModCount);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (est < 0) {
+                getEstimate();
+            }
+            Node e = current;
+            if (e == null || e == fence) {
+                return false;
+            }
+            current = successor(e);
+            action.accept(e.data);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (est < 0) {
+                getEstimate();
+            }
+            Node f = fence;
+            Node e = current;
+            current = f;
+            for (; e != null && e != f; e = successor(e)) {
+                action.accept(e.data);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getEstimate();
+        }
+
+        @Override
+        public int characteristics() {
+            return (side == 0 ? Spliterator.SIZED : 0)
+                    | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            return null;
+        }
+    }
+    
+    /**
+     * Gives the element of the specified rank, the k-th smallest element
+     * counting from 0. Takes time proportional to the height of the tree
+     * when the tree counts nodes and linear time otherwise.
+     *
+     * @param k the number of elements smaller than the element wanted
+     * @return the element with k smaller elements in the tree
+     * @throws BSTreeException when k is negative or not less than the size
+     */
+    public E select(int k) throws BSTreeException {
+        if (k < 0 || k >= size) {
+            throw new BSTreeException("Rank in [0, size) expected on select().");
+        }
+        if (!countsNodes) {
+            Node node = first(root);
+            for (; k > 0; k--) {
+                node = successor(node);
+            }
+            return node.data;
+        }
+        Node node = root;
+        while (true) {
+            int smaller = count(node.left);
+            if (k < smaller) {
+                node = node.left;
+            } else if (k > smaller) {
+                k -= smaller + 1;
+                node = node.right;
+            } else {
+                return node.data;
+            }
+        }
+    }
+
+    /**
+     * Gives the rank of the specified key, the number of elements in the
+     * tree smaller than the key. The key need not be in the tree. Takes time
+     * proportional to the height of the tree when the tree counts nodes and
+     * linear time otherwise.
+     *
+     * @param key a data key
+     * @return the number of elements smaller than the key
+     */
+    public int rank(E key) {
+        return countBelow(key, false);
+    }
+
+    /**
+     * Gives the number of elements in the tree between the specified keys,
+     * both inclusive. Takes time proportional to the height of the tree when
+     * the tree counts nodes and linear time otherwise.
+     *
+     * @param lo the smallest key counted
+     * @param hi the largest key counted
+     * @return the number of elements e with lo &lt;= e &lt;= hi, or 0 if hi is
+     * smaller than lo
+     */
+    public int countRange(E lo, E hi) {
+        if (lo.compareTo(hi) > 0) {
+            return 0;
+        }
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    /**
+     * An auxiliary method of rank and countRange that counts the elements
+     * smaller than, or optionally equal to, the specified key
+     *
+     * @param key a data key
+     * @param inclusive whether an element equal to the key is counted
+     * @return the number of elements counted
+     */
+    private int countBelow(E key, boolean inclusive) {
+        int below = 0;
+        if (!countsNodes) {
+            for (Node node = first(root); node != null; node = successor(node)) {
+                int d = node.data.compareTo(key);
+                if (d > 0 || (d == 0 && !inclusive)) {
+                    break;
+                }
+                below++;
+            }
+            return below;
+        }
+        Node node = root;
+        while (node != null) {
+            int d = node.data.compareTo(key);
+            if (d > 0 || (d == 0 && !inclusive)) {
+                node = node.left;
+            } else {
+                below += count(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return below;
+    }
+    
+    /**
+     * Gives the largest element less than or equal to the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E floor(E key) {
+        Node node = floorNode(key, true);
+        return (node == null) ? null : node.data;
+    }
+
+    /**
+     * Gives the smallest element greater than or equal to the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E ceiling(E key) {
+        Node node = ceilingNode(key, true);
+        return (node == null) ? null : node.data;
     }
 
-    @Override
-    public void inorderTraverse(Function func) {
-        inorderTraverse(root, func);
+    /**
+     * Gives the smallest element strictly greater than the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E higher(E key) {
+        Node node = ceilingNode(key, false);
+        return (node == null) ? null : node.data;
     }
 
-    @Override
-    public E retrieve(E key) throws BSTreeException {
-        Node nodeptr;
-        if (size == 0) {
-            throw new BSTreeException("Non-empty tree expected on retrieve().");
-        }
-        nodeptr = search(key);
-        if (nodeptr == null) {
-            throw new BSTreeException("Existent key expected on retrieve().");
-        }
-        return nodeptr.data;
+    /**
+     * Gives the largest element strictly less than the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E lower(E key) {
+        Node node = floorNode(key, false);
+        return (node == null) ? null : node.data;
     }
 
-    @Override
-    public int size() {
-        return size;
+    /**
+     * Gives a NavigableSet view of this tree. Changes to the tree show in
+     * the view and changes made through the view change the tree. Its range
+     * views seek straight to their bounds and are iterated lazily.
+     *
+     * @return a set view of this tree
+     */
+    public NavigableSet<E> asNavigableSet() {
+        return new BSTreeSet<>(this, null, false, null, false, false);
     }
 
     /**
-     * A recursive auxiliary method for the inorderTraver method that
+     * Gives a lazy view of the elements from lo, inclusive, to hi, exclusive
      *
-     * @param node a reference to a Node object
-     * @param func a function that is applied to the data in each node as the
-     * tree is traversed in order.
+     * @param lo the low endpoint of the view
+     * @param hi the high endpoint of the view
+     * @return a set view of the range
      */
-    private void inorderTraverse(Node node, Function func) {
-        if (node != null) {
-            inorderTraverse(node.left, func);
-            func.apply(node.data);
-            inorderTraverse(node.right, func);
-        }
+    public NavigableSet<E> subRange(E lo, E hi) {
+        return asNavigableSet().subSet(lo, true, hi, false);
     }
 
     /**
-     * An auxiliary method that support the remove method
+     * Gives a lazy view of the elements less than hi
      *
-     * @param node a reference to a Node object in this tree
+     * @param hi the high endpoint of the view
+     * @return a set view of the range
      */
-    private void remove(Node node) {
-        E theData;
-        Node parent, replacement;
-        parent = findParent(node);
-        if ((node.left != null) && (node.right != null)) {
-            replacement = node.right;
-            while (replacement.left != null) {
-                replacement = replacement.left;
-            }
-            theData = replacement.data;
-            remove(replacement);
-            node.data = theData;
-        } else {
-            if ((node.left == null) && (node.right == null)) {
-                replacement = null;
-            } else if (node.left == null) {
-                replacement = node.right;
-            } else {
-                replacement = node.left;
-            }
-            if (parent == null) {
-                root = replacement;
-            } else if (parent.left == node) {
-                parent.left = replacement;
-            } else {
-                parent.right = replacement;
-            }
+    public NavigableSet<E> headRange(E hi) {
+        return asNavigableSet().headSet(hi, false);
+    }
+
+    /**
+     * Gives a lazy view of the elements greater than or equal to lo
+     *
+     * @param lo the low endpoint of the view
+     * @return a set view of the range
+     */
+    public NavigableSet<E> tailRange(E lo) {
+        return asNavigableSet().tailSet(lo, true);
+    }
+
+    /**
+     * Gives an iterator over the elements between the specified bounds. The
+     * iterator seeks to its first node with one descent and stops at a fence
+     * node found with another, so no keys are compared while iterating.
+     *
+     * @param lo the low bound, or null for no low bound
+     * @param loInclusive whether an element equal to lo is included
+     * @param hi the high bound, or null for no high bound
+     * @param hiInclusive whether an element equal to hi is included
+     * @param descending whether to iterate from the high bound down
+     * @return an iterator over the range
+     */
+    Iterator<E> rangeIterator(E lo, boolean loInclusive, E hi, boolean hiInclusive,
+            boolean descending) {
+        Node low = (lo == null) ? first(root) : ceilingNode(lo, loInclusive);
+        Node high = (hi == null) ? last(root) : floorNode(hi, hiInclusive);
+        if (low == null || high == null || low.data.compareTo(high.data) > 0) {
+            return new NodeIterator(null, null, descending);
         }
+        if (descending) {
+            return new NodeIterator(high, predecessor(low), true);
+        }
+        return new NodeIterator(low, successor(high), false);
     }
 
     /**
-     * An auxiliary method that supports the search method
+     * An auxiliary method that gives the node holding the smallest element
+     * greater than, or optionally equal to, the specified key
      *
      * @param key a data key
-     * @return a reference to the Node object whose data has the specified key.
+     * @param inclusive whether an element equal to the key qualifies
+     * @return the node, or null if there is no such element
      */
-    private Node search(E key) {
+    private Node ceilingNode(E key, boolean inclusive) {
+        Node best = null;
         Node current = root;
         while (current != null) {
             int d = current.data.compareTo(key);
-            if (d == 0) {
-                return current;
-            } else if (d > 0) {
+            if (d > 0 || (d == 0 && inclusive)) {
+                best = current;
+                if (d == 0) {
+                    break;
+                }
                 current = current.left;
             } else {
                 current = current.right;
             }
         }
-        return null;
+        return best;
     }
 
     /**
-     * An auxiliary method that gives a Node reference to the parent node of the
-     * specified node
+     * An auxiliary method that gives the node holding the largest element
+     * less than, or optionally equal to, the specified key
      *
-     * @param node a reference to a Node object
-     * @return a reference to the parent node of the specified node
+     * @param key a data key
+     * @param inclusive whether an element equal to the key qualifies
+     * @return the node, or null if there is no such element
      */
-    private Node findParent(Node node) {
-        Node tmp = root;
-        if (tmp == node) {
-            return null;
-        }
-        while (true) {
-            assert tmp.data.compareTo(node.data) != 0;
-            if (tmp.data.compareTo(node.data) > 0) {
-                /* this assert is not needed but just
-                 in case there is a bug */
-                assert tmp.left != null;
-                if (tmp.left == node) {
-                    return tmp;
-                } else {
-                    tmp = tmp.left;
+    private Node floorNode(E key, boolean inclusive) {
+        Node best = null;
+        Node current = root;
+        while (current != null) {
+            int d = current.data.compareTo(key);
+            if (d < 0 || (d == 0 && inclusive)) {
+                best = current;
+                if (d == 0) {
+                    break;
                 }
+                current = current.right;
             } else {
-                assert tmp.right != null;
-                if (tmp.right == node) {
-                    return tmp;
-                } else {
-                    tmp = tmp.right;
-                }
+                current = current.left;
             }
         }
-    }
-    
-    @Override
-    public void postorderTraverse(Function func)
-    {
-        postorderTraverse(root, func);
-    }
-    
-    @Override
-    public void preorderTraverse(Function func)
-    {
-        preorderTraverse(root, func);
-    }
-    
-    /**
-     * traverses the binary search tree in postorder
-     * and apply the specify function to the data in each node visited
-     * @param node node visited
-     * @param func function applied
-     */
-    private void postorderTraverse(Node node, Function func)
-    {
-        if (node != null)
-        {
-            postorderTraverse(node.left, func);
-            postorderTraverse(node.right, func);
-            func.apply(node.data);
-        }
-    }
-    
-    /**
-     * traverses the binary search tree in preorder
-     * and apply the specify function to the data in each node visited
-     * @param node node visited
-     * @param func function applied
-     */
-    private void preorderTraverse(Node node, Function func)
-    {
-        if(node != null)
-        {
-            func.apply(node.data);
-            preorderTraverse(node.left, func);
-            preorderTraverse(node.right, func);
-        }
+        return best;
     }
     
     /**
@@ -496,38 +2904,464 @@ public class BSTree<E extends Comparable<E>> implements BSTreeAPI<E>
      */
     public ArrayList<E> sort()
     {
-        ArrayList<E> list = new ArrayList<>();
-        Function<E,Boolean> f = x -> list.add(x);
-        inorderTraverse(f);
-        return list;
+        Object[] items = new Object[size];
+        if(!runsInParallel())
+        {
+            int i = 0;
+            for(Node node = first(root); node != null; node = successor(node))
+                items[i++] = node.data;
+        }
+        else
+        {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int depth = splitDepth(pool);
+            Split sizes = countsNodes ? null : pool.invoke(new SizeTask(root, depth));
+            pool.invoke(new FillTask(items, root, sizes, 0, depth));
+        }
+        @SuppressWarnings("unchecked")
+        List<E> sorted = (List<E>) (List<?>) Arrays.asList(items);
+        return new ArrayList<>(sorted);
+    }
+    
+    /**
+     * Reduces the elements of this tree on the common fork-join pool. The
+     * tree is split among tasks at the children of its top nodes, each
+     * task maps and combines the elements of its subtree in ascending
+     * order, and the results are combined in ascending order too, so the
+     * combiner need only be associative. The tree must not change until
+     * the call returns.
+     * @param <R> the type of the result
+     * @param identity the result for no elements, an identity of the
+     * combiner
+     * @param mapper maps an element to a result
+     * @param combiner combines the results of two runs of elements, the
+     * lower run first
+     * @return the combined result of all the elements
+     */
+    public <R> R parallelReduce(R identity, Function<? super E, ? extends R> mapper,
+            BinaryOperator<R> combiner)
+    {
+        Object[] result = parallelCollect(() -> new Object[] {identity},
+                (holder, item) -> holder[0] = combiner.apply(result(holder), mapper.apply(item)),
+                (a, b) -> {
+                    a[0] = combiner.apply(result(a), result(b));
+                    return a;
+                });
+        return result(result);
+    }
+    
+    /**
+     * Gives the result held by a holder of parallelReduce
+     * @param <R> the type of the result
+     * @param holder an array holding the result
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> R result(Object[] holder)
+    {
+        return (R) holder[0];
+    }
+    
+    /**
+     * Sums a long computed from each element of this tree, on the common
+     * fork-join pool, without boxing.
+     * @param mapper maps an element to the long added up
+     * @return the sum
+     */
+    public long parallelSum(ToLongFunction<? super E> mapper)
+    {
+        return parallelCollect(() -> new long[1],
+                (sum, item) -> sum[0] += mapper.applyAsLong(item),
+                (a, b) -> {
+                    a[0] += b[0];
+                    return a;
+                })[0];
+    }
+    
+    /**
+     * Counts the elements of this tree that satisfy the specified
+     * predicate, on the common fork-join pool.
+     * @param predicate the test an element counted passes
+     * @return the number of such elements
+     */
+    public long parallelCount(Predicate<? super E> predicate)
+    {
+        return parallelSum(item -> predicate.test(item) ? 1 : 0);
+    }
+    
+    /**
+     * Gives the elements of this tree that satisfy the specified
+     * predicate, found on the common fork-join pool.
+     * @param predicate the test an element kept passes
+     * @return the elements that pass, in ascending order
+     */
+    public ArrayList<E> parallelFilter(Predicate<? super E> predicate)
+    {
+        return parallelCollect(ArrayList<E>::new,
+                (list, item) -> {
+                    if(predicate.test(item))
+                        list.add(item);
+                },
+                (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+    }
+    
+    /**
+     * Accumulates the elements of this tree into mutable containers on the
+     * common fork-join pool, like Stream.collect. Each task accumulates the
+     * elements of its subtree in ascending order into a container of its
+     * own, and the containers are merged in ascending order. The tree must
+     * not change until the call returns.
+     * @param <R> the type of the container
+     * @param supplier creates an empty container
+     * @param accumulator adds an element to a container
+     * @param combiner merges the second container into the first, the
+     * lower run of elements first, and gives the result
+     * @return the container holding all the elements
+     */
+    public <R> R parallelCollect(Supplier<R> supplier, BiConsumer<R, ? super E> accumulator,
+            BinaryOperator<R> combiner)
+    {
+        if(!runsInParallel())
+            return new CollectTask<>(root, 0, supplier, accumulator, combiner).compute();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return pool.invoke(new CollectTask<>(root, splitDepth(pool), supplier, accumulator, combiner));
+    }
+    
+    /**
+     * Tells whether sort and the parallel operations are worth splitting
+     * among tasks: the tree is large enough and there is more than one
+     * processor to run them
+     * @return true if the work goes to the fork-join pool
+     */
+    private boolean runsInParallel()
+    {
+        return size >= SEQUENTIAL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+    
+    /**
+     * Gives the depth down to which the parallel operations split the tree
+     * among tasks: enough levels for about eight tasks per worker of the
+     * pool
+     * @param pool the pool the tasks run on
+     * @return the number of levels of nodes that are split at
+     */
+    private static int splitDepth(ForkJoinPool pool)
+    {
+        return 35 - Integer.numberOfLeadingZeros(pool.getParallelism());
+    }
+    
+    /**
+     * Tells whether a task on the subtree rooted at the specified node
+     * handles the subtree by itself instead of splitting it
+     * @param node the root of a subtree
+     * @param depth the number of levels the task may still split
+     * @return true if the task walks the subtree alone
+     */
+    private boolean isLeafTask(Node node, int depth)
+    {
+        return depth <= 0 || (countsNodes && count(node) < SEQUENTIAL_THRESHOLD);
+    }
+    
+    /**
+     * A task of parallelCollect: collects a subtree, splitting it at the
+     * children of its root while the depth allows.
+     * @param <R> the type of the container
+     */
+    @SuppressWarnings("serial")
+    private final class CollectTask<R> extends RecursiveTask<R>
+    {
+        private final Node node;
+        private final int depth;
+        private final Supplier<R> supplier;
+        private final BiConsumer<R, ? super E> accumulator;
+        private final BinaryOperator<R> combiner;
+        
+        CollectTask(Node node, int depth, Supplier<R> supplier,
+                BiConsumer<R, ? super E> accumulator, BinaryOperator<R> combiner)
+        {
+            this.node = node;
+            this.depth = depth;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+        
+        @Override
+        protected R compute()
+        {
+            R result = supplier.get();
+            if(node == null)
+                return result;
+            if(isLeafTask(node, depth))
+            {
+                Node end = last(node);
+                for(Node x = first(node); ; x = successor(x))
+                {
+                    accumulator.accept(result, x.data);
+                    if(x == end)
+                        return result;
+                }
+            }
+            CollectTask<R> left = new CollectTask<>(node.left, depth - 1, supplier, accumulator, combiner);
+            left.fork();
+            R right = new CollectTask<>(node.right, depth - 1, supplier, accumulator, combiner).compute();
+            accumulator.accept(result, node.data);
+            return combiner.apply(combiner.apply(left.join(), result), right);
+        }
+    }
+    
+    /**
+     * The sizes of the subtrees a parallel sort splits the tree into,
+     * shaped like the splits: a Split without children stands for a subtree
+     * walked by one task.
+     */
+    private static final class Split
+    {
+        private final int size;
+        private final Split left;
+        private final Split right;
+        
+        Split(int size, Split left, Split right)
+        {
+            this.size = size;
+            this.left = left;
+            this.right = right;
+        }
+    }
+    
+    /**
+     * The first pass of a parallel sort of a tree that does not count its
+     * nodes: counts the subtrees the second pass fills in.
+     */
+    @SuppressWarnings("serial")
+    private final class SizeTask extends RecursiveTask<Split>
+    {
+        private final Node node;
+        private final int depth;
+        
+        SizeTask(Node node, int depth)
+        {
+            this.node = node;
+            this.depth = depth;
+        }
+        
+        @Override
+        protected Split compute()
+        {
+            if(node == null)
+                return null;
+            if(isLeafTask(node, depth))
+            {
+                int count = 0;
+                for(Node x = node; x != null; x = nextPreorder(x, node))
+                    count++;
+                return new Split(count, null, null);
+            }
+            SizeTask left = new SizeTask(node.left, depth - 1);
+            left.fork();
+            Split right = new SizeTask(node.right, depth - 1).compute();
+            Split leftSplit = left.join();
+            int size = 1 + ((leftSplit == null) ? 0 : leftSplit.size) + ((right == null) ? 0 : right.size);
+            return new Split(size, leftSplit, right);
+        }
+    }
+    
+    /**
+     * The second pass of a parallel sort: copies a subtree in order into
+     * the array from the specified offset, the left subtree and the right
+     * subtree in tasks of their own, placed by the size of the left one.
+     */
+    @SuppressWarnings("serial")
+    private final class FillTask extends RecursiveAction
+    {
+        private final Object[] items;
+        private final Node node;
+        private final Split sizes;
+        private final int offset;
+        private final int depth;
+        
+        FillTask(Object[] items, Node node, Split sizes, int offset, int depth)
+        {
+            this.items = items;
+            this.node = node;
+            this.sizes = sizes;
+            this.offset = offset;
+            this.depth = depth;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if(node == null)
+                return;
+            if(isLeafTask(node, depth))
+            {
+                int i = offset;
+                Node end = last(node);
+                for(Node x = first(node); ; x = successor(x))
+                {
+                    items[i++] = x.data;
+                    if(x == end)
+                        return;
+                }
+            }
+            Split leftSizes = (sizes == null) ? null : sizes.left;
+            int leftSize = countsNodes ? count(node.left) : (leftSizes == null) ? 0 : leftSizes.size;
+            items[offset + leftSize] = node.data;
+            invokeAll(new FillTask(items, node.left, leftSizes, offset, depth - 1),
+                    new FillTask(items, node.right, (sizes == null) ? null : sizes.right,
+                            offset + leftSize + 1, depth - 1));
+        }
+    }
+    
+    /**
+    * Creates an immutable copy of this tree laid out in an array, which
+    * answers inTree, retrieve, floor and ceiling without following a
+    * reference. Later changes to this tree do not show in the copy.
+    * @return a frozen tree holding the elements of this tree
+    */
+    public FrozenBSTree<E> freeze()
+    {
+        Object[] sorted = new Object[size];
+        int i = 0;
+        for(Node node = first(root); node != null; node = successor(node))
+            sorted[i++] = node.data;
+        return new FrozenBSTree<>(sorted, size);
     }
     
     /**
-     * Wrapper method for determining whether binary search trees are equivalent
-     * @param bstree the tree for which to compare equivalence
+     * Determines whether the specified object is a binary search tree with
+     * the same shape as this tree and equal data in each position. When both
+     * trees keep fingerprints, trees whose fingerprints differ are told apart
+     * in constant time; otherwise both trees are walked once, in step.
+     * @param obj the object with which to compare equivalence
      * @return true if equivalent, false otherwise
      */
-    public boolean equals(BSTree bstree)
+    @Override
+    public boolean equals(Object obj)
     {
+        if(this == obj)
+            return true;
+        if(!(obj instanceof BSTree))
+            return false;
+        @SuppressWarnings("unchecked")
+        BSTree<E> bstree = (BSTree<E>) obj;
         if(this.size != bstree.size)
             return false;
+        if(fingerprints && bstree.fingerprints && root != null
+                && hash(root) != bstree.hash(bstree.root))
+            return false;
         return equals(root, bstree.root);
     }
     
     /**
-     * Determines whether two binary search trees are equivalent.
-     * @param subtree1 the left subtree of the nodes being compared
-     * @param subtree2 the right subtree of the nodes being compared
+     * Determines whether two subtrees are equivalent by walking them
+     * pre-order in step, comparing the data and the children present at
+     * each pair of nodes.
+     * @param subtree1 the root of a subtree of this tree
+     * @param subtree2 the root of a subtree of the other tree
      * @return true if equivalent, false otherwise
      */
     private boolean equals(Node subtree1, Node subtree2)
     {
-        if(subtree1 == null && subtree2 == null)
-            return true;
-        else if(subtree1.data != subtree2.data)
-            return false;
-        equals(subtree1.left, subtree2.left);
-        equals(subtree1.right, subtree2.right);
-        return false;
+        Node node1 = subtree1;
+        Node node2 = subtree2;
+        while(node1 != null && node2 != null)
+        {
+            if(!node1.data.equals(node2.data)
+                    || (node1.left == null) != (node2.left == null)
+                    || (node1.right == null) != (node2.right == null))
+                return false;
+            node1 = nextPreorder(node1, subtree1);
+            node2 = nextPreorder(node2, subtree2);
+        }
+        return node1 == node2;
+    }
+    
+    /**
+     * Gives a hash code consistent with equals: the fingerprint of this
+     * tree folded to an int.
+     * @return the hash code of this tree
+     */
+    @Override
+    public int hashCode()
+    {
+        long fingerprint = fingerprint();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+    
+    /**
+     * Gives a 64-bit fingerprint of the shape and data of this tree. Equal
+     * trees have equal fingerprints and different trees almost always have
+     * different ones. Takes constant time when the tree keeps fingerprints
+     * and one pass over the tree otherwise.
+     * @return the fingerprint, or 0 if the tree is empty
+     */
+    public long fingerprint()
+    {
+        if(root == null)
+            return 0;
+        if(fingerprints)
+            return hash(root);
+        long[] hashes = new long[16];
+        int top = 0;
+        for(Node node = firstPostorder(root); ; node = nextPostorder(node))
+        {
+            long right = (node.right != null) ? hashes[--top] : 0;
+            long left = (node.left != null) ? hashes[--top] : 0;
+            if(top == hashes.length)
+                hashes = Arrays.copyOf(hashes, 2 * top);
+            hashes[top++] = combine(node.data, left, right);
+            if(node == root)
+                return hashes[0];
+        }
+    }
+    
+    /**
+     * Finds where this tree and the specified tree differ. The trees are
+     * descended together from their roots; a pair of subtrees with equal
+     * fingerprints is skipped without looking inside, so when both trees
+     * keep fingerprints the work is proportional to the number of
+     * differences times the height. Where the data of a pair of nodes
+     * differ, or only one tree has a node, the subtree there is reported
+     * and not descended into.
+     * @param other a binary search tree
+     * @return the data at the roots of the differing subtrees, taken from
+     * this tree where it has a node and from the other tree otherwise
+     */
+    public ArrayList<E> differingSubtrees(BSTree<E> other)
+    {
+        ArrayList<E> differences = new ArrayList<>();
+        boolean skip = fingerprints && other.fingerprints;
+        ArrayList<Node> pairs = new ArrayList<>();
+        pairs.add(root);
+        pairs.add(other.root);
+        while(!pairs.isEmpty())
+        {
+            Node node2 = pairs.remove(pairs.size() - 1);
+            Node node1 = pairs.remove(pairs.size() - 1);
+            if(node1 == null && node2 == null)
+                continue;
+            if(node1 == null || node2 == null)
+            {
+                differences.add((node1 != null) ? node1.data : node2.data);
+                continue;
+            }
+            if(skip && hash(node1) == other.hash(node2))
+                continue;
+            if(!node1.data.equals(node2.data))
+            {
+                differences.add(node1.data);
+                continue;
+            }
+            pairs.add(node1.right);
+            pairs.add(node2.right);
+            pairs.add(node1.left);
+            pairs.add(node2.left);
+        }
+        return differences;
     }
 }
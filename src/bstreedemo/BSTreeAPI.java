@@ -86,6 +86,8 @@ public interface BSTreeAPI<E> {
     /**
     * Delete all leaf nodes of this tree and decrement the size of
     * the tree. Does nothing if the tree is empty.
+    * @throws UnsupportedOperationException when the tree keeps all its
+    * data in its leaves, as PagedBSTree does
     */
     void trim();
     
@@ -104,4 +106,11 @@ public interface BSTreeAPI<E> {
       * @return the diameter of this tree.
       */
       public int diameter();
+      
+      /**
+       * Gives the height of this tree.
+       * @return the number of nodes along the longest root-to-leaf path,
+       * or 0 if the tree is empty.
+       */
+      public int height();
 }
@@ -0,0 +1,83 @@
+package bstreedemo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Describes how the data of a tree is written to and read from bytes<br>
+ * BSTree.save writes each key through a codec behind a length prefix, so a
+ * codec only encodes the key itself and decodes it from exactly the bytes
+ * it wrote. The codecs for Integer, Long and String are provided.
+ *
+ * @param <E> the data type
+ * @see BSTree#save
+ * @see BSTree#load
+ */
+public interface BSTreeCodec<E> {
+
+    /**
+     * Writes the bytes of an item at the position of the buffer.
+     *
+     * @param item the item to encode
+     * @param out the buffer written to
+     * @throws java.nio.BufferOverflowException when the buffer has too little
+     * room left; the caller retries with a larger buffer
+     */
+    void encode(E item, ByteBuffer out);
+
+    /**
+     * Reads an item from the bytes at the position of the buffer.
+     *
+     * @param in the buffer read from
+     * @param length the number of bytes the item was encoded in
+     * @return the decoded item
+     */
+    E decode(ByteBuffer in, int length);
+
+    /**
+     * Encodes an Integer in 4 big-endian bytes.
+     */
+    BSTreeCodec<Integer> INTEGER = new BSTreeCodec<Integer>() {
+        @Override
+        public void encode(Integer item, ByteBuffer out) {
+            out.putInt(item);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer in, int length) {
+            return in.getInt();
+        }
+    };
+
+    /**
+     * Encodes a Long in 8 big-endian bytes.
+     */
+    BSTreeCodec<Long> LONG = new BSTreeCodec<Long>() {
+        @Override
+        public void encode(Long item, ByteBuffer out) {
+            out.putLong(item);
+        }
+
+        @Override
+        public Long decode(ByteBuffer in, int length) {
+            return in.getLong();
+        }
+    };
+
+    /**
+     * Encodes a String in UTF-8.
+     */
+    BSTreeCodec<String> STRING = new BSTreeCodec<String>() {
+        @Override
+        public void encode(String item, ByteBuffer out) {
+            out.put(item.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String decode(ByteBuffer in, int length) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -65,6 +65,14 @@ public class BSTreeDemo
         System.out.println("The root-to-leaf paths in tree3 are now:");
         System.out.println(tree3.getPaths().toString());
         System.out.printf("The diameter of tree3 is now %d and its size is now %d.%n", tree3.diameter(), tree3.size());
+        
+        BSTree<Integer> tree4 = new BSTree<>(BSTree.Balance.AVL);
+        for(int i = 1; i <= 15; i++)
+            tree4.insert(i);
+        
+        System.out.println("\nThe root-to-leaf paths in the balanced tree4 are:");
+        System.out.println(tree4.getPaths().toString());
+        System.out.printf("The diameter of tree4 is %d and its size is %d.%n", tree4.diameter(), tree4.size());
     }
     
 }
@@ -0,0 +1,47 @@
+package bstreedemo;
+
+/**
+ * The management interface of an instrumented tree <br>
+ * A tree registered with BSTree.registerMBean shows its size, its height
+ * and a snapshot of its statistics to JMX clients such as JConsole. The
+ * tree is never walked by the JMX thread: the size and height are the
+ * ones the tree recorded in volatile fields after its last operation, and
+ * the counters are read without locking the tree, so a snapshot taken
+ * while another thread changes the tree may be slightly inconsistent.
+ *
+ * @see BSTree#registerMBean
+ */
+public interface BSTreeMXBean {
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    int getSize();
+
+    /**
+     * @return the height of the tree after its last operation. A tree
+     * that is balanced or augmented keeps it exactly; a plain tree raises
+     * it on each insert, and after a remove or trim gives the height it
+     * had before, a bound, until it next operates after this call and
+     * measures itself again on its own thread.
+     */
+    int getHeight();
+
+    /**
+     * @return whether the tree is recording its operations
+     */
+    boolean isStatsEnabled();
+
+    /**
+     * @return a snapshot of the statistics of the tree
+     */
+    BSTreeStats getStats();
+
+    /**
+     * Discards the statistics recorded so far. The tree discards them on
+     * its own thread when it next records an operation; until then
+     * getStats reports no calls. Does nothing while the tree is not
+     * recording, and never turns recording on.
+     */
+    void resetStats();
+}
@@ -0,0 +1,137 @@
+package bstreedemo;
+
+import java.util.Arrays;
+
+/**
+ * Records the operations of a tree while its instrumentation is on <br>
+ * For each operation the tree passes the number of compareTo calls it
+ * made and the time it started; the comparisons of a search are also the
+ * number of nodes on its path, which goes into one histogram shared by
+ * all the operations. The tree calls this object only when it has one,
+ * so a tree without instrumentation pays one null check per operation.
+ *
+ * @see BSTree#setStatsEnabled
+ * @see BSTreeStats
+ */
+class BSTreeMetrics {
+
+    /**
+     * the number of comparisons made by the last counted search
+     */
+    int path;
+
+    /**
+     * the size of the tree after its last recorded operation, for readers
+     * on other threads
+     */
+    volatile int size;
+
+    /**
+     * the height of the tree after its last recorded operation, for
+     * readers on other threads; while heightExact is false, a bound the
+     * height is at most
+     */
+    volatile int height;
+
+    /**
+     * whether height is the height of the tree and not only a bound; read
+     * and written by the tree alone
+     */
+    boolean heightExact = true;
+
+    /**
+     * set by a reader on another thread to have the tree measure its
+     * height again after its next operation if height is only a bound
+     */
+    volatile boolean heightWanted;
+
+    /**
+     * set by a reader on another thread to have what was recorded
+     * discarded before the next operation of the tree is recorded
+     */
+    volatile boolean resetWanted;
+
+    /**
+     * the number of calls of each operation
+     */
+    private final long[] calls = new long[BSTreeStats.Operation.values().length];
+
+    /**
+     * the number of comparisons made by each operation
+     */
+    private final long[] comparisons = new long[calls.length];
+
+    /**
+     * the latencies of each operation
+     */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[calls.length];
+
+    /**
+     * the number of searches whose path held each number of nodes
+     */
+    private long[] pathLengths = new long[64];
+
+    BSTreeMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records one call of an operation
+     *
+     * @param operation the operation
+     * @param compared the number of comparisons it made
+     * @param start the value of System.nanoTime() when it started
+     */
+    void record(BSTreeStats.Operation operation, int compared, long start) {
+        if (resetWanted) {
+            clear();
+        }
+        long elapsed = System.nanoTime() - start;
+        int i = operation.ordinal();
+        calls[i]++;
+        comparisons[i] += compared;
+        latencies[i].record(elapsed);
+        if (compared >= pathLengths.length) {
+            pathLengths = Arrays.copyOf(pathLengths, Math.max(2 * pathLengths.length, compared + 1));
+        }
+        pathLengths[compared]++;
+    }
+
+    /**
+     * Discards the calls, comparisons, latencies and path lengths recorded
+     * so far, keeping the size and height; called by the tree alone
+     */
+    void clear() {
+        Arrays.fill(calls, 0);
+        Arrays.fill(comparisons, 0);
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        pathLengths = new long[64];
+        resetWanted = false;
+    }
+
+    /**
+     * Gives a copy of what has been recorded
+     *
+     * @param size the number of nodes in the tree
+     * @param height the height of the tree
+     * @return the snapshot
+     */
+    BSTreeStats snapshot(int size, int height) {
+        BSTreeStats.OperationStats[] operations = new BSTreeStats.OperationStats[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            LatencyHistogram latency = latencies[i];
+            operations[i] = new BSTreeStats.OperationStats(calls[i], comparisons[i],
+                    latency.mean(), latency.percentile(0.5), latency.percentile(0.9),
+                    latency.percentile(0.99), latency.percentile(0.999), latency.max());
+        }
+        int last = pathLengths.length;
+        while (last > 0 && pathLengths[last - 1] == 0) {
+            last--;
+        }
+        return new BSTreeStats(size, height, Arrays.copyOf(pathLengths, last), operations);
+    }
+}
@@ -0,0 +1,385 @@
+package bstreedemo;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * A NavigableSet view of a range of a binary search tree. <br>
+ * The view holds no elements of its own: every query seeks into the
+ * backing tree and iterators walk the tree lazily between the bounds
+ * of the view.
+ * @param <E> the tree data type
+ * @see BSTree#asNavigableSet()
+ */
+final class BSTreeSet<E extends Comparable<E>> extends AbstractSet<E> implements NavigableSet<E>
+{
+
+    /**
+     * the backing tree
+     */
+    private final BSTree<E> tree;
+
+    /**
+     * the low bound of the view, or null for no low bound
+     */
+    private final E lo;
+
+    /**
+     * whether an element equal to lo is in the view
+     */
+    private final boolean loInclusive;
+
+    /**
+     * the high bound of the view, or null for no high bound
+     */
+    private final E hi;
+
+    /**
+     * whether an element equal to hi is in the view
+     */
+    private final boolean hiInclusive;
+
+    /**
+     * whether the view is ordered from the high bound down
+     */
+    private final boolean descending;
+
+    BSTreeSet(BSTree<E> tree, E lo, boolean loInclusive, E hi, boolean hiInclusive, boolean descending)
+    {
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    /**
+     * Determines whether the specified element lies below the range.
+     * @param e an element
+     * @return true if the element is too low for the view
+     */
+    private boolean tooLow(E e)
+    {
+        if (lo == null)
+            return false;
+        int d = e.compareTo(lo);
+        return d < 0 || (d == 0 && !loInclusive);
+    }
+
+    /**
+     * Determines whether the specified element lies above the range.
+     * @param e an element
+     * @return true if the element is too high for the view
+     */
+    private boolean tooHigh(E e)
+    {
+        if (hi == null)
+            return false;
+        int d = e.compareTo(hi);
+        return d > 0 || (d == 0 && !hiInclusive);
+    }
+
+    /**
+     * Determines whether the specified element lies in the range.
+     * @param e an element
+     * @return true if the element is within the bounds of the view
+     */
+    private boolean inRange(E e)
+    {
+        return !tooLow(e) && !tooHigh(e);
+    }
+
+    /**
+     * Determines whether the specified element lies in the range or on
+     * one of its bounds, whether or not the bound is inclusive.
+     * @param e an element
+     * @return true if the element may bound a view within this view
+     */
+    private boolean inClosedRange(E e)
+    {
+        return (lo == null || e.compareTo(lo) >= 0) && (hi == null || e.compareTo(hi) <= 0);
+    }
+
+    /**
+     * Gives the smallest element of the range in ascending order.
+     * @return the element, or null if the range is empty
+     */
+    private E absLowest()
+    {
+        Iterator<E> it = tree.rangeIterator(lo, loInclusive, hi, hiInclusive, false);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * Gives the largest element of the range in ascending order.
+     * @return the element, or null if the range is empty
+     */
+    private E absHighest()
+    {
+        Iterator<E> it = tree.rangeIterator(lo, loInclusive, hi, hiInclusive, true);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * Gives the smallest element of the range greater than or equal to
+     * the specified element in ascending order.
+     * @param e an element
+     * @return the element found, or null if there is none
+     */
+    private E absCeiling(E e)
+    {
+        if (tooLow(e))
+            return absLowest();
+        E found = tree.ceiling(e);
+        return (found == null || tooHigh(found)) ? null : found;
+    }
+
+    /**
+     * Gives the smallest element of the range strictly greater than
+     * the specified element in ascending order.
+     * @param e an element
+     * @return the element found, or null if there is none
+     */
+    private E absHigher(E e)
+    {
+        if (tooLow(e))
+            return absLowest();
+        E found = tree.higher(e);
+        return (found == null || tooHigh(found)) ? null : found;
+    }
+
+    /**
+     * Gives the largest element of the range less than or equal to
+     * the specified element in ascending order.
+     * @param e an element
+     * @return the element found, or null if there is none
+     */
+    private E absFloor(E e)
+    {
+        if (tooHigh(e))
+            return absHighest();
+        E found = tree.floor(e);
+        return (found == null || tooLow(found)) ? null : found;
+    }
+
+    /**
+     * Gives the largest element of the range strictly less than
+     * the specified element in ascending order.
+     * @param e an element
+     * @return the element found, or null if there is none
+     */
+    private E absLower(E e)
+    {
+        if (tooHigh(e))
+            return absHighest();
+        E found = tree.lower(e);
+        return (found == null || tooLow(found)) ? null : found;
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return tree.rangeIterator(lo, loInclusive, hi, hiInclusive, descending);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator()
+    {
+        return tree.rangeIterator(lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    /**
+     * Gives the number of elements in the view. Takes time proportional to
+     * the height of the tree when the tree counts nodes.
+     * @return the number of elements in the range
+     */
+    @Override
+    public int size()
+    {
+        if (lo == null && hi == null)
+            return tree.size();
+        int below = (lo == null) ? 0 : tree.rank(lo) + ((!loInclusive && tree.inTree(lo)) ? 1 : 0);
+        int upTo = (hi == null) ? tree.size() : tree.rank(hi) + ((hiInclusive && tree.inTree(hi)) ? 1 : 0);
+        return Math.max(0, upTo - below);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return absLowest() == null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o)
+    {
+        E e = (E) o;
+        return inRange(e) && tree.inTree(e);
+    }
+
+    @Override
+    public boolean add(E e)
+    {
+        if (!inRange(e))
+            throw new IllegalArgumentException("key out of range");
+        int before = tree.size();
+        tree.insert(e);
+        return tree.size() != before;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o)
+    {
+        E e = (E) o;
+        if (!inRange(e))
+            return false;
+        int before = tree.size();
+        tree.remove(e);
+        return tree.size() != before;
+    }
+
+    @Override
+    public Comparator<? super E> comparator()
+    {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public E first()
+    {
+        E e = descending ? absHighest() : absLowest();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    @Override
+    public E last()
+    {
+        E e = descending ? absLowest() : absHighest();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    @Override
+    public E lower(E e)
+    {
+        return descending ? absHigher(e) : absLower(e);
+    }
+
+    @Override
+    public E floor(E e)
+    {
+        return descending ? absCeiling(e) : absFloor(e);
+    }
+
+    @Override
+    public E ceiling(E e)
+    {
+        return descending ? absFloor(e) : absCeiling(e);
+    }
+
+    @Override
+    public E higher(E e)
+    {
+        return descending ? absLower(e) : absHigher(e);
+    }
+
+    @Override
+    public E pollFirst()
+    {
+        E e = descending ? absHighest() : absLowest();
+        if (e != null)
+            tree.remove(e);
+        return e;
+    }
+
+    @Override
+    public E pollLast()
+    {
+        E e = descending ? absLowest() : absHighest();
+        if (e != null)
+            tree.remove(e);
+        return e;
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet()
+    {
+        return new BSTreeSet<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive)
+    {
+        if (descending)
+            return absSubSet(toElement, toInclusive, fromElement, fromInclusive);
+        return absSubSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive)
+    {
+        if (descending)
+            return absSubSet(toElement, inclusive, hi, hiInclusive);
+        return absSubSet(lo, loInclusive, toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive)
+    {
+        if (descending)
+            return absSubSet(lo, loInclusive, fromElement, inclusive);
+        return absSubSet(fromElement, inclusive, hi, hiInclusive);
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement)
+    {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement)
+    {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement)
+    {
+        return tailSet(fromElement, true);
+    }
+
+    /**
+     * Gives a view of the part of this view between the specified bounds in
+     * ascending order, keeping the direction of this view.
+     * @param from the new low bound, or null to keep no low bound
+     * @param fromInclusive whether an element equal to from is included
+     * @param to the new high bound, or null to keep no high bound
+     * @param toInclusive whether an element equal to to is included
+     * @return the narrowed view
+     */
+    private NavigableSet<E> absSubSet(E from, boolean fromInclusive, E to, boolean toInclusive)
+    {
+        if (from != null && from != lo && !inClosedRange(from))
+            throw new IllegalArgumentException("fromKey out of range");
+        if (to != null && to != hi && !inClosedRange(to))
+            throw new IllegalArgumentException("toKey out of range");
+        if (from != null && to != null && from.compareTo(to) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        if (from != null && lo != null && from.compareTo(lo) == 0)
+            fromInclusive &= loInclusive;
+        if (to != null && hi != null && to.compareTo(hi) == 0)
+            toInclusive &= hiInclusive;
+        return new BSTreeSet<>(tree, from, fromInclusive, to, toInclusive, descending);
+    }
+}
@@ -0,0 +1,218 @@
+package bstreedemo;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the instrumentation of a tree <br>
+ * Gives, for each operation that searches the tree, the number of calls,
+ * the compareTo calls they made and percentiles of their latency, and for
+ * all of them together a histogram of the number of nodes each search
+ * visited, along with the size and height of the tree when the snapshot
+ * was taken. The getters make the snapshot an open type for JMX.
+ *
+ * @see BSTree#stats
+ * @see BSTreeMXBean
+ */
+public final class BSTreeStats {
+
+    /**
+     * The operations that are recorded.
+     */
+    public enum Operation {
+        INSERT, IN_TREE, RETRIEVE, REMOVE
+    }
+
+    /**
+     * What was recorded of one operation. Latencies are in nanoseconds
+     * and include the time spent rebalancing.
+     */
+    public static final class OperationStats {
+
+        private final long count;
+        private final long comparisons;
+        private final double meanLatency;
+        private final long p50, p90, p99, p999, maxLatency;
+
+        OperationStats(long count, long comparisons, double meanLatency, long p50,
+                long p90, long p99, long p999, long maxLatency) {
+            this.count = count;
+            this.comparisons = comparisons;
+            this.meanLatency = meanLatency;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.maxLatency = maxLatency;
+        }
+
+        /**
+         * @return the number of calls
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of compareTo calls made by all the calls
+         */
+        public long getComparisons() {
+            return comparisons;
+        }
+
+        /**
+         * @return the mean number of compareTo calls per call, or 0
+         */
+        public double getMeanComparisons() {
+            return (count == 0) ? 0 : (double) comparisons / count;
+        }
+
+        /**
+         * @return the mean latency
+         */
+        public double getMeanLatencyNanos() {
+            return meanLatency;
+        }
+
+        /**
+         * @return the median latency
+         */
+        public long getP50LatencyNanos() {
+            return p50;
+        }
+
+        /**
+         * @return the 90th percentile of the latency
+         */
+        public long getP90LatencyNanos() {
+            return p90;
+        }
+
+        /**
+         * @return the 99th percentile of the latency
+         */
+        public long getP99LatencyNanos() {
+            return p99;
+        }
+
+        /**
+         * @return the 99.9th percentile of the latency
+         */
+        public long getP999LatencyNanos() {
+            return p999;
+        }
+
+        /**
+         * @return the largest latency
+         */
+        public long getMaxLatencyNanos() {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %.1f comparisons/call, latency ns mean %.0f"
+                    + " p50 %d p90 %d p99 %d p99.9 %d max %d", count, getMeanComparisons(),
+                    meanLatency, p50, p90, p99, p999, maxLatency);
+        }
+    }
+
+    /**
+     * the number of nodes in the tree
+     */
+    private final int size;
+
+    /**
+     * the height of the tree
+     */
+    private final int height;
+
+    /**
+     * the number of searches whose path held each number of nodes
+     */
+    private final long[] pathLengths;
+
+    /**
+     * what was recorded of each operation, by ordinal
+     */
+    private final OperationStats[] operations;
+
+    BSTreeStats(int size, int height, long[] pathLengths, OperationStats[] operations) {
+        this.size = size;
+        this.height = height;
+        this.pathLengths = pathLengths;
+        this.operations = operations;
+    }
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes along the longest root-to-leaf path
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the histogram of search paths: element i is the number of
+     * searches that compared the key with i nodes
+     */
+    public long[] getPathLengths() {
+        return pathLengths.clone();
+    }
+
+    /**
+     * Gives what was recorded of the specified operation.
+     *
+     * @param operation an operation
+     * @return the statistics of the operation
+     */
+    public OperationStats get(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    /**
+     * @return the statistics of insert
+     */
+    public OperationStats getInsert() {
+        return get(Operation.INSERT);
+    }
+
+    /**
+     * @return the statistics of inTree
+     */
+    public OperationStats getInTree() {
+        return get(Operation.IN_TREE);
+    }
+
+    /**
+     * @return the statistics of retrieve
+     */
+    public OperationStats getRetrieve() {
+        return get(Operation.RETRIEVE);
+    }
+
+    /**
+     * @return the statistics of remove
+     */
+    public OperationStats getRemove() {
+        return get(Operation.REMOVE);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("size ").append(size).append(", height ").append(height);
+        for (Operation operation : Operation.values()) {
+            text.append(System.lineSeparator()).append(operation).append(": ")
+                    .append(get(operation));
+        }
+        text.append(System.lineSeparator()).append("path lengths: ")
+                .append(Arrays.toString(pathLengths));
+        return text.toString();
+    }
+}
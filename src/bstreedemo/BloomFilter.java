@@ -0,0 +1,146 @@
+package bstreedemo;
+
+/**
+ * A counting Bloom filter over the data of a tree <br>
+ * Each item sets PROBES of the counters, chosen by its hash code, and
+ * an item whose counters are not all set is certainly not in the tree;
+ * when they are all set it is in the tree or, with a probability under
+ * one percent, a false positive. Counting instead of setting bits lets
+ * a removal take its item back out. The counters are 4 bits, sixteen to
+ * a long; a counter that reaches 15 stays there, so it can no longer be
+ * taken out and only makes false positives likelier.
+ * <br>
+ * Items that compare equal must have equal hash codes, or the filter
+ * turns away items that are in the tree.
+ *
+ * @see BSTree#setFilterEnabled
+ */
+class BloomFilter {
+
+    /**
+     * the number of counters each item sets
+     */
+    private static final int PROBES = 7;
+
+    /**
+     * the least number of counters per item the filter is sized for
+     */
+    private static final int COUNTERS_PER_ITEM = 10;
+
+    /**
+     * the largest value a counter holds
+     */
+    private static final long SATURATED = 15;
+
+    /**
+     * the counters, sixteen 4-bit counters to a long
+     */
+    private final long[] words;
+
+    /**
+     * the number of counters less one, a power of two less one
+     */
+    private final int mask;
+
+    /**
+     * the number of items the filter is sized for
+     */
+    private final int capacity;
+
+    /**
+     * Constructs an empty filter
+     *
+     * @param capacity the number of items it is sized for
+     */
+    BloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 64);
+        long wanted = (long) this.capacity * COUNTERS_PER_ITEM;
+        int counters = (int) Math.min(Long.highestOneBit(wanted - 1) << 1, 1 << 30);
+        words = new long[counters >>> 4];
+        mask = counters - 1;
+    }
+
+    /**
+     * Gives the number of items the filter is sized for; more items make
+     * false positives likelier
+     *
+     * @return the capacity
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds an item
+     *
+     * @param item the item
+     */
+    void add(Object item) {
+        long h = mix(item.hashCode());
+        int index = (int) h;
+        int step = (int) (h >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++, index += step) {
+            int counter = index & mask;
+            int shift = (counter & 15) << 2;
+            if (((words[counter >>> 4] >>> shift) & SATURATED) != SATURATED) {
+                words[counter >>> 4] += 1L << shift;
+            }
+        }
+    }
+
+    /**
+     * Takes out an item that was added
+     *
+     * @param item the item
+     */
+    void remove(Object item) {
+        long h = mix(item.hashCode());
+        int index = (int) h;
+        int step = (int) (h >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++, index += step) {
+            int counter = index & mask;
+            int shift = (counter & 15) << 2;
+            long value = (words[counter >>> 4] >>> shift) & SATURATED;
+            if (value != 0 && value != SATURATED) {
+                words[counter >>> 4] -= 1L << shift;
+            }
+        }
+    }
+
+    /**
+     * Tells whether an item may have been added
+     *
+     * @param item the item
+     * @return false if the item was certainly not added
+     */
+    boolean mightContain(Object item) {
+        long h = mix(item.hashCode());
+        int index = (int) h;
+        int step = (int) (h >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++, index += step) {
+            int counter = index & mask;
+            if ((words[counter >>> 4] & (SATURATED << ((counter & 15) << 2))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads a hash code over 64 bits with the MurmurHash3 finalizer; the
+     * low and high halves give the first counter and the step between
+     * counters
+     *
+     * @param hash a hash code
+     * @return the mixed hash
+     */
+    private static long mix(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,537 @@
+package bstreedemo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A binary search tree that many threads may read and change at once <br>
+ * Readers never lock: they follow the volatile child links from the head
+ * of the tree and are never sent the wrong way, because a node's data
+ * never moves to another node and nodes are only ever spliced out of
+ * the tree, which moves their subtrees up. Writers lock only the nodes
+ * they change, always a parent before its child:
+ * <ul>
+ * <li>insert locks the parent of the new leaf;</li>
+ * <li>remove of a node with at most one child locks the node and its
+ * parent and splices the node out;</li>
+ * <li>remove of a node with two children locks the node and marks it
+ * deleted; it stays in the tree to route searches until it has at most
+ * one child, when it is spliced out as well.</li>
+ * </ul>
+ * A writer that finds the tree changed between its descent and its locks
+ * descends again. The size is kept in a striped counter. Traversals,
+ * trim, getPaths, diameter and height are weakly consistent: they see
+ * each node as it is when they reach it, and inorderTraverse and sort
+ * give their keys strictly ascending all the same. The traversals, trim and
+ * getPaths skip deleted nodes; diameter and height measure the tree as
+ * it is linked, deleted nodes included.
+ *
+ * @param <E> the tree data type
+ * @see BSTreeAPI
+ */
+public class ConcurrentBSTree<E extends Comparable<E>> implements BSTreeAPI<E>
+{
+
+    /**
+     * a sentinel above the root; the root is its right child
+     */
+    private final Node<E> head = new Node<>(null);
+
+    /**
+     * the number of live nodes in this tree
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * A node of the tree. Its data is only ever replaced by an equal item,
+     * and its child links are only written while the node is locked.
+     */
+    private static final class Node<E> {
+
+        /**
+         * the data in this node
+         */
+        volatile E data;
+        /**
+         * A reference to the left subtree rooted at this node.
+         */
+        volatile Node<E> left;
+        /**
+         * A reference to the right subtree rooted at this node
+         */
+        volatile Node<E> right;
+        /**
+         * whether the data of this node has been removed from the tree
+         */
+        volatile boolean deleted;
+        /**
+         * whether this node has been spliced out of the tree
+         */
+        volatile boolean unlinked;
+
+        Node(E data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * The result of a descent: the node holding the key, or null, and the
+     * last node visited above it.
+     */
+    private static final class Position<E> {
+
+        /**
+         * the parent of node, or the would-be parent of the key
+         */
+        Node<E> parent;
+        /**
+         * the node holding the key, or null if the key was not found
+         */
+        Node<E> node;
+        /**
+         * whether the key is, or would be, the left child of parent
+         */
+        boolean isLeft;
+    }
+
+    /**
+     * Constructs an empty tree
+     */
+    public ConcurrentBSTree() {
+    }
+
+    /**
+     * An auxiliary method that descends from the head of the tree to the
+     * node holding the specified key without locking anything
+     *
+     * @param key a data key
+     * @return where the key is, or would be, in the tree
+     */
+    private Position<E> find(E key) {
+        Position<E> position = new Position<>();
+        Node<E> parent = head;
+        Node<E> node = head.right;
+        boolean isLeft = false;
+        while (node != null) {
+            int d = node.data.compareTo(key);
+            if (d == 0) {
+                break;
+            }
+            parent = node;
+            isLeft = d > 0;
+            node = isLeft ? node.left : node.right;
+        }
+        position.parent = parent;
+        position.node = node;
+        position.isLeft = isLeft;
+        return position;
+    }
+
+    /**
+     * An auxiliary method that gives the live node holding the specified key
+     * without locking anything
+     *
+     * @param key a data key
+     * @return the node, or null if the key is not in the tree
+     */
+    private Node<E> search(E key) {
+        Node<E> node = head.right;
+        while (node != null) {
+            int d = node.data.compareTo(key);
+            if (d == 0) {
+                return node.deleted ? null : node;
+            }
+            node = (d > 0) ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public void insert(E item) {
+        while (true) {
+            Position<E> position = find(item);
+            Node<E> node = position.node;
+            if (node != null) {
+                synchronized (node) {
+                    if (node.unlinked) {
+                        continue;
+                    }
+                    node.data = item;
+                    if (node.deleted) {
+                        node.deleted = false;
+                        size.increment();
+                    }
+                    return;
+                }
+            }
+            Node<E> parent = position.parent;
+            synchronized (parent) {
+                Node<E> child = position.isLeft ? parent.left : parent.right;
+                if (parent.unlinked || child != null) {
+                    continue;
+                }
+                if (position.isLeft) {
+                    parent.left = new Node<>(item);
+                } else {
+                    parent.right = new Node<>(item);
+                }
+                size.increment();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        return search(item) != null;
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (head.right == null) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        Node<E> node = search(key);
+        if (node == null) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return node.data;
+    }
+
+    @Override
+    public void remove(E item) {
+        while (true) {
+            Position<E> position = find(item);
+            Node<E> node = position.node;
+            if (node == null || node.deleted) {
+                return;
+            }
+            if (node.left != null && node.right != null) {
+                synchronized (node) {
+                    if (node.unlinked || node.left == null || node.right == null) {
+                        continue;
+                    }
+                    if (!node.deleted) {
+                        node.deleted = true;
+                        size.decrement();
+                    }
+                    return;
+                }
+            }
+            Node<E> parent = position.parent;
+            synchronized (parent) {
+                synchronized (node) {
+                    if (!splice(parent, node)) {
+                        continue;
+                    }
+                    if (!node.deleted) {
+                        node.deleted = true;
+                        size.decrement();
+                    }
+                }
+            }
+            if (parent != head && parent.deleted) {
+                unlinkIfRouting(parent.data);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Splices the specified node out of the tree if it is still a child of
+     * the specified parent and has at most one child. Both nodes must be
+     * locked, the parent first.
+     *
+     * @param parent the parent of the node
+     * @param node a node of the tree
+     * @return true if the node was spliced out; false if the tree changed
+     */
+    private boolean splice(Node<E> parent, Node<E> node) {
+        if (parent.unlinked || node.unlinked
+                || (parent.left != node && parent.right != node)
+                || (node.left != null && node.right != null)) {
+            return false;
+        }
+        Node<E> child = (node.left != null) ? node.left : node.right;
+        if (parent.left == node) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        node.unlinked = true;
+        return true;
+    }
+
+    /**
+     * Splices out the deleted node holding the specified key once it has at
+     * most one child, so deleted nodes do not pile up in the tree
+     *
+     * @param key the key of a deleted node
+     */
+    private void unlinkIfRouting(E key) {
+        while (true) {
+            Position<E> position = find(key);
+            Node<E> node = position.node;
+            if (node == null || !node.deleted
+                    || (node.left != null && node.right != null)) {
+                return;
+            }
+            Node<E> parent = position.parent;
+            synchronized (parent) {
+                synchronized (node) {
+                    if (!node.deleted) {
+                        return;
+                    }
+                    if (!splice(parent, node)) {
+                        continue;
+                    }
+                }
+            }
+            if (parent != head && parent.deleted) {
+                key = parent.data;
+                continue;
+            }
+            return;
+        }
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        Node<E> node = head.right;
+        /* a remove that splices out a node on the stack moves its subtree up
+         where keys beyond the node may be inserted, so keys not above the
+         last one given are skipped */
+        E last = null;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            E data = node.data;
+            if (!node.deleted && (last == null || data.compareTo(last) > 0)) {
+                func.apply(data);
+                last = data;
+            }
+            node = node.right;
+        }
+    }
+
+    @Override
+    public void preorderTraverse(Function func) {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        if (head.right != null) {
+            stack.push(head.right);
+        }
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            Node<E> left = node.left;
+            Node<E> right = node.right;
+            if (!node.deleted) {
+                func.apply(node.data);
+            }
+            if (right != null) {
+                stack.push(right);
+            }
+            if (left != null) {
+                stack.push(left);
+            }
+        }
+    }
+
+    @Override
+    public void postorderTraverse(Function func) {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        ArrayDeque<Node<E>> output = new ArrayDeque<>();
+        if (head.right != null) {
+            stack.push(head.right);
+        }
+        /* a reversed right-first preorder visits the nodes in postorder */
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            Node<E> left = node.left;
+            Node<E> right = node.right;
+            output.push(node);
+            if (left != null) {
+                stack.push(left);
+            }
+            if (right != null) {
+                stack.push(right);
+            }
+        }
+        for (Node<E> node : output) {
+            if (!node.deleted) {
+                func.apply(node.data);
+            }
+        }
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public ArrayList<E> sort() {
+        ArrayList<E> list = new ArrayList<>();
+        Function<E, Boolean> f = x -> list.add(x);
+        inorderTraverse(f);
+        return list;
+    }
+
+    /**
+     * Delete the live nodes that are leaves when the traversal reaches them.
+     * Does nothing if the tree is empty.
+     */
+    @Override
+    public void trim() {
+        ArrayList<E> leaves = new ArrayList<>();
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        if (head.right != null) {
+            stack.push(head.right);
+        }
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            Node<E> left = node.left;
+            Node<E> right = node.right;
+            if (left == null && right == null) {
+                if (!node.deleted) {
+                    leaves.add(node.data);
+                }
+                continue;
+            }
+            if (right != null) {
+                stack.push(right);
+            }
+            if (left != null) {
+                stack.push(left);
+            }
+        }
+        for (E leaf : leaves) {
+            remove(leaf);
+        }
+    }
+
+    /**
+     * Gives the root-to-leaf paths of the tree. The deleted nodes that still
+     * route searches are left out of the paths they lie on.
+     *
+     * @return an array list of the root-to-leaf paths
+     * @throws BSTreeException when the tree is empty
+     */
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        Node<E> root = head.right;
+        if (root == null) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        StringBuilder path = new StringBuilder();
+        ArrayDeque<Node<E>> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> lengths = new ArrayDeque<>();
+        nodes.push(root);
+        lengths.push(0);
+        while (!nodes.isEmpty()) {
+            Node<E> node = nodes.pop();
+            path.setLength(lengths.pop());
+            Node<E> left = node.left;
+            Node<E> right = node.right;
+            if (!node.deleted) {
+                if (path.length() > 0) {
+                    path.append("->");
+                }
+                path.append(node.data);
+            }
+            if (left == null && right == null) {
+                if (path.length() > 0) {
+                    paths.add(path.toString());
+                }
+                continue;
+            }
+            if (right != null) {
+                nodes.push(right);
+                lengths.push(path.length());
+            }
+            if (left != null) {
+                nodes.push(left);
+                lengths.push(path.length());
+            }
+        }
+        return paths;
+    }
+
+    @Override
+    public int diameter() {
+        return heightAndDiameter()[1];
+    }
+
+    @Override
+    public int height() {
+        return heightAndDiameter()[0];
+    }
+
+    /**
+     * An auxiliary method of the diameter and height methods that visits
+     * the nodes once, post-order, keeping the heights of the visited
+     * subtrees on a stack from which each node pops its children's. The
+     * child links of each node are read once, so the pass stays consistent
+     * with itself while writers change the tree.
+     *
+     * @return the height and the diameter of the tree
+     */
+    private int[] heightAndDiameter() {
+        Node<E> root = head.right;
+        if (root == null) {
+            return new int[] {0, 0};
+        }
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        ArrayDeque<Node<E>> order = new ArrayDeque<>();
+        ArrayDeque<Node<E>> children = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            Node<E> left = node.left;
+            Node<E> right = node.right;
+            order.push(node);
+            children.push((left != null) ? left : node);
+            children.push((right != null) ? right : node);
+            if (left != null) {
+                stack.push(left);
+            }
+            if (right != null) {
+                stack.push(right);
+            }
+        }
+        int[] heights = new int[16];
+        int top = 0;
+        int longest = 0;
+        /* the children deque holds, for each node in postorder, the right
+         and then the left child seen, or the node itself for none */
+        for (Node<E> node : order) {
+            Node<E> right = children.pop();
+            Node<E> left = children.pop();
+            int r = (right != node) ? heights[--top] : 0;
+            int l = (left != node) ? heights[--top] : 0;
+            longest = Math.max(longest, 1 + l + r);
+            if (top == heights.length) {
+                heights = Arrays.copyOf(heights, 2 * top);
+            }
+            heights[top++] = 1 + Math.max(l, r);
+        }
+        return new int[] {heights[0], longest};
+    }
+}
@@ -0,0 +1,768 @@
+package bstreedemo;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A BSTree whose changes survive a crash <br>
+ * Every insert and remove that changes the tree appends a record to a
+ * write-ahead log in a directory of its own: the kind of change, the key
+ * behind its length and a CRC-32 of both. A trim is logged as a remove of
+ * each key it deleted, since which keys are leaves depends on the shape
+ * of the tree, and a splay tree changes its shape on lookups that are not
+ * logged. Records are collected in
+ * memory and written and forced to the storage device together, by a
+ * background thread once per commit window, so one fsync covers every
+ * change made during the window. A crash loses at most the changes of the
+ * last window; a window of 0 forces each change before it returns, and
+ * sync() forces everything logged so far. A batch whose write or force
+ * fails is put back in front of the pending records, and the next flush
+ * cuts the log back to the end of the last batch forced whole before
+ * writing it again, so a failed write neither loses records nor leaves a
+ * torn one in front of later commits.
+ * <br>
+ * The log is split into generations. Once a generation holds more than a
+ * set number of bytes, the tree is copied, a new generation is begun, and
+ * the copy is saved as a checkpoint of everything up to the old one by a
+ * thread of its own, so that writing it holds up no commit; the
+ * checkpoint is written to a temporary file, forced and renamed, and only
+ * then are the older checkpoint and logs deleted. Opening the directory
+ * loads the newest checkpoint and replays the records of the later
+ * generations in order. The newest log is cut off at the first record
+ * that is incomplete or fails its CRC, which a crash in the middle of a
+ * write leaves behind; such a record in an older log, which was forced
+ * whole before the next one was begun, fails the opening instead.
+ * <br>
+ * The tree may be used by several threads; each operation holds the lock
+ * of the tree, and the writes and fsyncs of the log happen outside it.
+ *
+ * @param <E> the tree data type
+ * @see BSTree#writeTo
+ * @see BSTree#load
+ */
+public class DurableBSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Closeable
+{
+
+    /**
+     * the kind of a record of an insert
+     */
+    private static final byte INSERT = 1;
+
+    /**
+     * the kind of a record of a remove
+     */
+    private static final byte REMOVE = 2;
+
+    /**
+     * the start of the name of a log file, followed by its generation
+     */
+    private static final String LOG = "wal-";
+
+    /**
+     * the start of the name of a checkpoint file, followed by the last
+     * generation it holds
+     */
+    private static final String CHECKPOINT = "checkpoint-";
+
+    /**
+     * the directory holding the log and checkpoints
+     */
+    private final Path dir;
+
+    /**
+     * encodes and decodes the keys
+     */
+    private final BSTreeCodec<E> codec;
+
+    /**
+     * the longest time a change waits in memory before it is forced to
+     * the storage device, in milliseconds
+     */
+    private final long commitWindow;
+
+    /**
+     * the number of bytes of log after which a checkpoint is taken
+     */
+    private final long checkpointBytes;
+
+    /**
+     * the tree; guarded by this
+     */
+    private BSTree<E> tree;
+
+    /**
+     * the records not yet written to the log; guarded by this
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * the buffer that takes the place of pending when it is written out
+     */
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * a buffer the keys are encoded into; guarded by this
+     */
+    private ByteBuffer key = ByteBuffer.allocate(64);
+
+    /**
+     * computes the CRCs of the records; guarded by this
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * the generation records are logged to; guarded by this
+     */
+    private long generation;
+
+    /**
+     * the number of bytes logged to the current generation; guarded by
+     * this
+     */
+    private long logged;
+
+    /**
+     * the log file of the generation being written; guarded by flushLock
+     */
+    private FileChannel log;
+
+    /**
+     * the number of bytes of the log file that were forced whole; guarded
+     * by flushLock
+     */
+    private long logEnd;
+
+    /**
+     * held while the log is written, forced or begun anew, so that
+     * batches reach the log in the order they were logged; taken before
+     * the lock of the tree when both are held
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * held while a checkpoint is written; taken after neither of the
+     * other locks
+     */
+    private final Object checkpointLock = new Object();
+
+    /**
+     * the last generation saved in a checkpoint; guarded by
+     * checkpointLock
+     */
+    private long checkpointed;
+
+    /**
+     * forces the log once per commit window; null when the window is 0
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * writes the checkpoints taken when the log grows past its size
+     */
+    private final ExecutorService checkpointer;
+
+    /**
+     * the first failure of the background threads, reported by the next
+     * change of the tree
+     */
+    private volatile IOException failure;
+
+    /**
+     * Opens the tree kept in the specified directory with a commit window
+     * of 10 milliseconds and a checkpoint every 64 MB of log, creating an
+     * empty tree if the directory holds none
+     *
+     * @param dir the directory of the tree
+     * @param codec encodes and decodes the keys
+     * @param policy the balancing policy of a new tree
+     * @throws IOException when the directory cannot be read or recovered
+     */
+    public DurableBSTree(Path dir, BSTreeCodec<E> codec, BSTree.Balance policy) throws IOException {
+        this(dir, codec, policy, 10, 64L << 20);
+    }
+
+    /**
+     * Opens the tree kept in the specified directory, creating an empty
+     * tree if the directory holds none. A tree that is recovered keeps the
+     * balancing policy and augmentations of its checkpoint.
+     *
+     * @param dir the directory of the tree
+     * @param codec encodes and decodes the keys
+     * @param policy the balancing policy of a new tree
+     * @param commitWindow the longest time in milliseconds a change waits
+     * before it is forced to the storage device; 0 to force every change
+     * before it returns
+     * @param checkpointBytes the number of bytes of log after which a
+     * checkpoint is taken
+     * @throws IOException when the directory cannot be read or recovered
+     */
+    public DurableBSTree(Path dir, BSTreeCodec<E> codec, BSTree.Balance policy, long commitWindow,
+            long checkpointBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.codec = codec;
+        this.commitWindow = commitWindow;
+        this.checkpointBytes = checkpointBytes;
+        long last = recover(policy);
+        generation = last + 1;
+        log = openLog(generation);
+        checkpointer = Executors.newSingleThreadExecutor(daemon("DurableBSTree checkpointer " + dir));
+        if (commitWindow > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(daemon("DurableBSTree flusher " + dir));
+            flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    flush(false);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }, commitWindow, commitWindow, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Makes the daemon threads of the background work
+     *
+     * @param name the name of the threads
+     * @return the thread factory
+     */
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Records the first failure of a background thread
+     *
+     * @param e the failure
+     */
+    private synchronized void failed(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Loads the newest checkpoint in the directory, or makes an empty
+     * tree, and replays the logs of the generations after it. Takes a
+     * checkpoint of the result if any record was replayed.
+     *
+     * @param policy the balancing policy of a new tree
+     * @return the last generation the directory holds
+     * @throws IOException when a file cannot be read
+     */
+    private long recover(BSTree.Balance policy) throws IOException {
+        long checkpoint = -1;
+        ArrayList<Long> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.startsWith(CHECKPOINT)) {
+                    checkpoint = Math.max(checkpoint, Long.parseLong(name.substring(CHECKPOINT.length())));
+                } else if (name.startsWith(LOG)) {
+                    logs.add(Long.parseLong(name.substring(LOG.length())));
+                }
+            }
+        }
+        tree = (checkpoint >= 0) ? BSTree.load(dir.resolve(CHECKPOINT + checkpoint), codec)
+                : new BSTree<>(policy);
+        Collections.sort(logs);
+        long last = Math.max(checkpoint, 0);
+        checkpointed = last;
+        long replayed = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            long g = logs.get(i);
+            if (g > checkpoint) {
+                replayed += replay(dir.resolve(LOG + g), i == logs.size() - 1);
+                last = g;
+            }
+        }
+        if (replayed > 0) {
+            writeCheckpoint(tree, last);
+        }
+        return last;
+    }
+
+    /**
+     * Applies the records of a log file to the tree, up to the first one
+     * that is incomplete or fails its CRC. The newest log is cut off
+     * there; in an older log such a record is not left by a crash, and is
+     * reported. A log left with no records is deleted.
+     *
+     * @param file the log file
+     * @param newest whether the log is the newest one
+     * @return the number of records applied
+     * @throws IOException when the file cannot be read, or an older log
+     * holds a bad record
+     */
+    private long replay(Path file, boolean newest) throws IOException {
+        long applied = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            MappedInput in = new MappedInput(channel, 0, end);
+            long good = 0;
+            try {
+                while (good < end) {
+                    byte kind = in.get();
+                    int length = in.getVarint();
+                    if ((kind != INSERT && kind != REMOVE) || length < 0 || length > end - in.position() - 4) {
+                        break;
+                    }
+                    ByteBuffer record = in.require(length + 4);
+                    int start = record.position();
+                    ByteBuffer bytes = record.duplicate();
+                    bytes.limit(start + length);
+                    if (record.getInt(start + length) != checksum(kind, length, bytes)) {
+                        break;
+                    }
+                    E item = codec.decode(record, length);
+                    if (kind == INSERT) {
+                        tree.insert(item);
+                    } else {
+                        tree.remove(item);
+                    }
+                    record.position(start + length + 4);
+                    good = in.position();
+                    applied++;
+                }
+            } catch (EOFException | StreamCorruptedException e) {
+                // the log ends inside a record that was being written
+            }
+            if (good < end) {
+                if (!newest) {
+                    throw new StreamCorruptedException("Bad record at offset " + good + " of " + file
+                            + ", which is followed by newer logs.");
+                }
+                channel.truncate(good);
+            }
+        }
+        if (applied == 0) {
+            Files.delete(file);
+        }
+        return applied;
+    }
+
+    /**
+     * Computes the CRC of a record from its kind, its length and the bytes
+     * of its key
+     *
+     * @param kind the kind of the record
+     * @param length the number of bytes of the key
+     * @param bytes the bytes of the key, from position to limit; consumed
+     * @return the CRC
+     */
+    private int checksum(byte kind, int length, ByteBuffer bytes) {
+        crc.reset();
+        crc.update(kind);
+        crc.update(length >>> 24);
+        crc.update(length >>> 16);
+        crc.update(length >>> 8);
+        crc.update(length);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends a record to the pending records
+     *
+     * @param kind the kind of the record
+     * @param item the key of the record
+     */
+    private void append(byte kind, E item) {
+        while (true) {
+            try {
+                key.clear();
+                codec.encode(item, key);
+                break;
+            } catch (BufferOverflowException e) {
+                key = ByteBuffer.allocate(2 * key.capacity());
+            }
+        }
+        key.flip();
+        int length = key.remaining();
+        if (pending.remaining() < length + 10) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + length + 10));
+            pending.flip();
+            pending = larger.put(pending);
+        }
+        int start = pending.position();
+        pending.put(kind);
+        BSTree.putVarint(pending, length);
+        pending.put(key.duplicate());
+        pending.putInt(checksum(kind, length, key));
+        logged += pending.position() - start;
+    }
+
+    /**
+     * Reports a failure of a background thread, and forces the log when
+     * there is no commit window. Called after a change, without the lock
+     * of the tree.
+     */
+    private void committed() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        if (commitWindow == 0) {
+            try {
+                flush(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records to the log and forces it to the storage
+     * device, then takes a checkpoint if the current generation has grown
+     * past its size or one is asked for. The next generation is begun
+     * under flushLock, but the checkpoint is written after it is let go:
+     * by the checkpointer when the log has grown, and before returning
+     * when one is asked for. When the batch cannot be written or forced,
+     * it goes back in front of the pending records and no generation is
+     * begun.
+     *
+     * @param checkpoint whether to take a checkpoint whatever the size of
+     * the log
+     * @throws IOException when the log or checkpoint cannot be written
+     */
+    private void flush(boolean checkpoint) throws IOException {
+        BSTree<E> copy = null;
+        long covered = 0;
+        synchronized (flushLock) {
+            ByteBuffer batch;
+            long before = 0;
+            synchronized (this) {
+                batch = pending;
+                pending = spare;
+                spare = null;
+                if (logged > 0 && (checkpoint || logged >= checkpointBytes)) {
+                    copy = new BSTree<>(tree);
+                    covered = generation;
+                    generation++;
+                    before = logged;
+                    logged = 0;
+                }
+            }
+            boolean forced = false;
+            try {
+                batch.flip();
+                if (batch.hasRemaining()) {
+                    if (log.size() != logEnd) {
+                        /* cut off what a failed write left behind */
+                        log.truncate(logEnd);
+                        log.position(logEnd);
+                    }
+                    while (batch.hasRemaining()) {
+                        log.write(batch);
+                    }
+                    log.force(false);
+                    logEnd = log.position();
+                }
+                forced = true;
+            } finally {
+                synchronized (this) {
+                    if (forced) {
+                        batch.clear();
+                        spare = batch;
+                    } else {
+                        requeue(batch);
+                        if (copy != null) {
+                            generation = covered;
+                            logged += before;
+                        }
+                    }
+                }
+            }
+            if (copy != null) {
+                log.close();
+                log = openLog(covered + 1);
+            }
+        }
+        if (copy == null) {
+            return;
+        }
+        if (checkpoint) {
+            writeCheckpoint(copy, covered);
+        } else {
+            BSTree<E> snapshot = copy;
+            long upTo = covered;
+            checkpointer.execute(() -> {
+                try {
+                    writeCheckpoint(snapshot, upTo);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Puts a batch that failed to reach the log back in front of the
+     * pending records. Called with the lock of the tree.
+     *
+     * @param batch the records of the batch, from 0 to its limit
+     */
+    private void requeue(ByteBuffer batch) {
+        ByteBuffer later = pending;
+        later.flip();
+        int length = batch.limit();
+        if (batch.capacity() - length < later.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * batch.capacity(), length + later.remaining()));
+            batch.position(0);
+            batch = larger.put(batch);
+        } else {
+            batch.position(length);
+            batch.limit(batch.capacity());
+        }
+        batch.put(later);
+        later.clear();
+        pending = batch;
+        spare = later;
+    }
+
+    /**
+     * Saves a checkpoint of the specified tree and deletes the checkpoints
+     * and logs it makes obsolete, unless a newer checkpoint has been saved
+     * meanwhile. The checkpoint is forced to the storage device under a
+     * temporary name before it is renamed, so a crash leaves either the
+     * old checkpoint or the new one.
+     *
+     * @param copy a tree no other thread changes
+     * @param covered the last generation whose records the tree holds
+     * @throws IOException when the checkpoint cannot be written
+     */
+    private void writeCheckpoint(BSTree<E> copy, long covered) throws IOException {
+        synchronized (checkpointLock) {
+            if (covered > checkpointed) {
+                saveCheckpoint(copy, covered);
+                checkpointed = covered;
+            }
+        }
+    }
+
+    /**
+     * Writes a checkpoint and deletes the older checkpoints and logs
+     *
+     * @param copy a tree no other thread changes
+     * @param covered the last generation whose records the tree holds
+     * @throws IOException when the checkpoint cannot be written
+     */
+    private void saveCheckpoint(BSTree<E> copy, long covered) throws IOException {
+        Path temporary = dir.resolve(CHECKPOINT + covered + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            copy.writeTo(channel, codec);
+            channel.force(true);
+        }
+        Files.move(temporary, dir.resolve(CHECKPOINT + covered), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if ((name.startsWith(CHECKPOINT) && !name.endsWith(".tmp")
+                        && Long.parseLong(name.substring(CHECKPOINT.length())) < covered)
+                        || (name.startsWith(LOG) && Long.parseLong(name.substring(LOG.length())) <= covered)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the entries of the directory to the storage device, so a
+     * renamed or created file is found after a crash. Not every platform
+     * lets a directory be opened; there the rename is left to the file
+     * system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // the directory cannot be forced on this platform
+        }
+    }
+
+    /**
+     * Opens the log file of a generation for appending, creating it, and
+     * records its length as forced whole
+     *
+     * @param g the generation
+     * @return the channel of the file, positioned at its end
+     * @throws IOException when the file cannot be opened
+     */
+    private FileChannel openLog(long g) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOG + g), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        logEnd = channel.size();
+        channel.position(logEnd);
+        forceDirectory();
+        return channel;
+    }
+
+    /**
+     * Forces every change made so far to the storage device
+     *
+     * @throws IOException when the log cannot be written
+     */
+    public void sync() throws IOException {
+        flush(false);
+    }
+
+    /**
+     * Forces every change made so far to the storage device and takes a
+     * checkpoint, so that opening the tree again replays no log
+     *
+     * @throws IOException when the log or checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException {
+        flush(true);
+    }
+
+    /**
+     * Stops the background threads, takes a checkpoint and closes the log
+     *
+     * @throws IOException when the log or checkpoint cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush(true);
+        } finally {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (flushLock) {
+                log.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    @Override
+    public void insert(E item) {
+        synchronized (this) {
+            tree.insert(item);
+            append(INSERT, item);
+        }
+        committed();
+    }
+
+    @Override
+    public synchronized boolean inTree(E item) {
+        return tree.inTree(item);
+    }
+
+    @Override
+    public void remove(E item) {
+        synchronized (this) {
+            int before = tree.size();
+            tree.remove(item);
+            if (tree.size() == before) {
+                return;
+            }
+            append(REMOVE, item);
+        }
+        committed();
+    }
+
+    @Override
+    public synchronized E retrieve(E key) throws BSTreeException {
+        return tree.retrieve(key);
+    }
+
+    @Override
+    public synchronized void inorderTraverse(Function func) {
+        tree.inorderTraverse(func);
+    }
+
+    @Override
+    public synchronized void postorderTraverse(Function func) {
+        tree.postorderTraverse(func);
+    }
+
+    @Override
+    public synchronized void preorderTraverse(Function func) {
+        tree.preorderTraverse(func);
+    }
+
+    @Override
+    public void trim() {
+        synchronized (this) {
+            if (tree.trimLevels(1, item -> append(REMOVE, item)) == 0) {
+                return;
+            }
+        }
+        committed();
+    }
+
+    @Override
+    public synchronized ArrayList<String> getPaths() throws BSTreeException {
+        return tree.getPaths();
+    }
+
+    @Override
+    public synchronized int diameter() {
+        return tree.diameter();
+    }
+
+    @Override
+    public synchronized int height() {
+        return tree.height();
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public synchronized ArrayList<E> sort() {
+        return tree.sort();
+    }
+}
@@ -0,0 +1,515 @@
+package bstreedemo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * An immutable binary search tree laid out in an array <br>
+ * The elements are stored in Eytzinger order: the root at index 1 and the
+ * children of the node at index k at 2k and 2k + 1, so the tree is
+ * complete and a search reads one array entry per level without following
+ * a reference. The nodes of the first levels share a few cache lines, and
+ * the 16 descendants of a node four levels down are adjacent, so a search
+ * reads memory in an order the hardware prefetcher follows. A search
+ * computes the next index from the outcome of each comparison instead of
+ * branching on it, and recovers the node of the answer from the bits of
+ * the index it stops at. When every element is an Integer or a Long, the
+ * keys are also kept in an int[] or long[] and compared unboxed.
+ * <br>
+ * A frozen tree is made by BSTree.freeze() and made changeable again by
+ * thaw(). insert, remove and trim throw UnsupportedOperationException.
+ *
+ * @param <E> the tree data type
+ * @see BSTree#freeze
+ * @see BSTreeAPI
+ */
+public class FrozenBSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Iterable<E>
+{
+
+    /**
+     * the elements in Eytzinger order, from index 1; index 0 is unused
+     */
+    private final Object[] keys;
+
+    /**
+     * the elements unboxed when they are all Integers, otherwise null
+     */
+    private final int[] ints;
+
+    /**
+     * the elements unboxed when they are all Longs, otherwise null
+     */
+    private final long[] longs;
+
+    /**
+     * the number of elements in this tree
+     */
+    private final int size;
+
+    /**
+     * Constructs a frozen tree of the specified elements
+     *
+     * @param sorted the elements in strictly ascending order
+     * @param size the number of elements
+     */
+    FrozenBSTree(Object[] sorted, int size) {
+        this.size = size;
+        keys = new Object[size + 1];
+        layout(sorted, 0, 1);
+        boolean allInts = size > 0;
+        boolean allLongs = size > 0;
+        for (int i = 0; i < size; i++) {
+            allInts &= sorted[i] instanceof Integer;
+            allLongs &= sorted[i] instanceof Long;
+        }
+        if (allInts) {
+            ints = new int[size + 1];
+            for (int k = 1; k <= size; k++) {
+                ints[k] = (Integer) keys[k];
+            }
+        } else {
+            ints = null;
+        }
+        if (allLongs) {
+            longs = new long[size + 1];
+            for (int k = 1; k <= size; k++) {
+                longs[k] = (Long) keys[k];
+            }
+        } else {
+            longs = null;
+        }
+    }
+
+    /**
+     * Places the sorted elements in Eytzinger order by an in-order walk of
+     * the implicit tree, the element at the next index of the sorted array
+     * going to each node the walk visits. The recursion is only as deep as
+     * the tree.
+     *
+     * @param sorted the elements in ascending order
+     * @param next the index in sorted of the next element to place
+     * @param k the index of the node to fill the subtree of
+     * @return the index in sorted of the next element left to place
+     */
+    private int layout(Object[] sorted, int next, int k) {
+        if (k > size) {
+            return next;
+        }
+        next = layout(sorted, next, 2 * k);
+        keys[k] = sorted[next++];
+        return layout(sorted, next, 2 * k + 1);
+    }
+
+    /**
+     * Walks from the root to below a leaf, going right at every node whose
+     * element is less than the key, or less than or equal to it. The bits
+     * of the index returned below the leading one spell the turns taken,
+     * 1 for right.
+     *
+     * @param key a data key
+     * @param orEqual whether to go right at an element equal to the key
+     * @return the index past the leaf the walk left the tree from
+     */
+    @SuppressWarnings("unchecked")
+    private int descend(E key, boolean orEqual) {
+        int k = 1;
+        if (ints != null) {
+            int x = (Integer) key;
+            while (k <= size) {
+                k = 2 * k + ((orEqual ? ints[k] <= x : ints[k] < x) ? 1 : 0);
+            }
+        } else if (longs != null) {
+            long x = (Long) key;
+            while (k <= size) {
+                k = 2 * k + ((orEqual ? longs[k] <= x : longs[k] < x) ? 1 : 0);
+            }
+        } else {
+            int bound = orEqual ? 1 : 0;
+            while (k <= size) {
+                k = 2 * k + ((((E) keys[k]).compareTo(key) < bound) ? 1 : 0);
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Gives the last node a walk from the root turned left at: the index
+     * with its trailing right turns and the left turn above them removed
+     *
+     * @param k an index returned by descend
+     * @return the index of the node, or 0 if the walk never turned left
+     */
+    private static int lastLeft(int k) {
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Gives the last node a walk from the root turned right at
+     *
+     * @param k an index returned by descend
+     * @return the index of the node, or 0 if the walk never turned right
+     */
+    private static int lastRight(int k) {
+        return k >> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    /**
+     * Gives the element at the specified index
+     *
+     * @param k an index from 1 to size, or 0
+     * @return the element, or null if the index is 0
+     */
+    @SuppressWarnings("unchecked")
+    private E at(int k) {
+        return (E) keys[k];
+    }
+
+    /**
+     * Gives the index of the element equal to the specified key
+     *
+     * @param key a data key
+     * @return the index, or 0 if the key is not in this tree
+     */
+    private int indexOf(E key) {
+        int k = lastLeft(descend(key, false));
+        return (k != 0 && at(k).compareTo(key) == 0) ? k : 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Not supported: a frozen tree cannot change.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void insert(E item) {
+        throw new UnsupportedOperationException("insert() on a frozen tree.");
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        return indexOf(item) != 0;
+    }
+
+    /**
+     * Not supported: a frozen tree cannot change.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove(E item) {
+        throw new UnsupportedOperationException("remove() on a frozen tree.");
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        int k = indexOf(key);
+        if (k == 0) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return at(k);
+    }
+
+    /**
+     * Gives a reference to the item in the tree with the specified key, like
+     * retrieve, but answers a missing key with null instead of an exception
+     *
+     * @param key the key to the item to be retrieved
+     * @return the item with the specified key, or null if there is none
+     */
+    public E retrieveOrNull(E key) {
+        return at(indexOf(key));
+    }
+
+    /**
+     * Gives the item in the tree with the specified key, like retrieve, but
+     * answers a missing key with an empty Optional instead of an exception
+     *
+     * @param key the key to the item to be retrieved
+     * @return the item with the specified key, if there is one
+     */
+    public Optional<E> find(E key) {
+        return Optional.ofNullable(retrieveOrNull(key));
+    }
+
+    /**
+     * Gives the largest element less than or equal to the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E floor(E key) {
+        return at(lastRight(descend(key, true)));
+    }
+
+    /**
+     * Gives the smallest element greater than or equal to the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E ceiling(E key) {
+        return at(lastLeft(descend(key, false)));
+    }
+
+    /**
+     * Gives the smallest element strictly greater than the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E higher(E key) {
+        return at(lastLeft(descend(key, true)));
+    }
+
+    /**
+     * Gives the largest element strictly less than the specified key
+     *
+     * @param key a data key
+     * @return the element, or null if there is no such element
+     */
+    public E lower(E key) {
+        return at(lastRight(descend(key, false)));
+    }
+
+    /**
+     * finds the minimum value of the tree.
+     *
+     * @return the minimum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E min() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        return at(first(1));
+    }
+
+    /**
+     * finds the maximum value of the tree.
+     *
+     * @return the maximum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E max() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        int k = 1;
+        while (2 * k + 1 <= size) {
+            k = 2 * k + 1;
+        }
+        return at(k);
+    }
+
+    /**
+     * Gives the leftmost node of the subtree at the specified index
+     *
+     * @param k the index of a node
+     * @return the index of the node with the smallest data in the subtree
+     */
+    private int first(int k) {
+        while (2 * k <= size) {
+            k = 2 * k;
+        }
+        return k;
+    }
+
+    /**
+     * Gives the in-order successor of the node at the specified index
+     *
+     * @param k the index of a node
+     * @return the index of the node with the next larger data, or 0
+     */
+    private int successor(int k) {
+        if (2 * k + 1 <= size) {
+            return first(2 * k + 1);
+        }
+        return lastLeft(k);
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        for (int k = (size == 0) ? 0 : first(1); k != 0; k = successor(k)) {
+            func.apply(keys[k]);
+        }
+    }
+
+    @Override
+    public void preorderTraverse(Function func) {
+        int k = (size == 0) ? 0 : 1;
+        while (k != 0) {
+            func.apply(keys[k]);
+            if (2 * k <= size) {
+                k = 2 * k;
+                continue;
+            }
+            while (k > 1 && ((k & 1) == 1 || k + 1 > size)) {
+                k >>= 1;
+            }
+            k = (k > 1) ? k + 1 : 0;
+        }
+    }
+
+    /**
+     * Traverses the tree in postorder. The tree is complete, so every node
+     * with a right child has a left child, and the first node in postorder
+     * of a subtree is its leftmost node.
+     *
+     * @param func a function applied to the data in each node
+     */
+    @Override
+    public void postorderTraverse(Function func) {
+        int k = (size == 0) ? 0 : first(1);
+        while (k != 0) {
+            func.apply(keys[k]);
+            if (k == 1) {
+                k = 0;
+            } else if ((k & 1) == 0 && k + 1 <= size) {
+                k = first(k + 1);
+            } else {
+                k >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Gives an iterator over the elements of this tree in ascending order.
+     * The iterator does not support remove.
+     *
+     * @return an in-order iterator
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = (size == 0) ? 0 : first(1);
+
+            @Override
+            public boolean hasNext() {
+                return next != 0;
+            }
+
+            @Override
+            public E next() {
+                if (next == 0) {
+                    throw new NoSuchElementException();
+                }
+                E item = at(next);
+                next = successor(next);
+                return item;
+            }
+        };
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public ArrayList<E> sort() {
+        ArrayList<E> list = new ArrayList<>(size);
+        for (E item : this) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    /**
+     * Not supported: a frozen tree cannot change.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void trim() {
+        throw new UnsupportedOperationException("trim() on a frozen tree.");
+    }
+
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        StringBuilder path = new StringBuilder();
+        for (int leaf = first(1); leaf != 0; leaf = successor(leaf)) {
+            if (2 * leaf > size) {
+                path.setLength(0);
+                for (int depth = 31 - Integer.numberOfLeadingZeros(leaf); depth >= 0; depth--) {
+                    path.append(keys[leaf >> depth]);
+                    if (depth > 0) {
+                        path.append("->");
+                    }
+                }
+                paths.add(path.toString());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Gives the diameter of this tree. The tree is complete, so the longest
+     * path passes through the root.
+     *
+     * @return the number of nodes along the longest path, or 0 if the tree
+     * is empty
+     */
+    @Override
+    public int diameter() {
+        if (size == 0) {
+            return 0;
+        }
+        return 1 + height(2) + height(3);
+    }
+
+    @Override
+    public int height() {
+        return height(1);
+    }
+
+    /**
+     * Gives the height of the subtree at the specified index, the number
+     * of levels its leftmost path reaches
+     *
+     * @param k the index of a node
+     * @return the height of the subtree, or 0 if there is no such node
+     */
+    private int height(int k) {
+        int levels = 0;
+        for (long i = k; i <= size; i *= 2) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Creates a changeable tree holding the elements of this tree. The new
+     * tree is perfectly balanced.
+     *
+     * @param policy the balancing policy of the new tree
+     * @param augments the augmentations kept in the nodes of the new tree
+     * @return a new tree holding the elements
+     */
+    public BSTree<E> thaw(BSTree.Balance policy, BSTree.Augment... augments) {
+        try {
+            return BSTree.fromSorted(sort(), policy, augments);
+        } catch (BSTreeException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
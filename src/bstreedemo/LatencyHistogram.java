@@ -0,0 +1,136 @@
+package bstreedemo;
+
+/**
+ * A histogram of durations in nanoseconds with a bounded relative error
+ * <br>
+ * Like an HDR histogram, the values are counted in buckets whose width
+ * grows with their magnitude: each power of two is split into 32 buckets,
+ * so a percentile is off by at most 1/32 of its value, and a fixed array
+ * of 1920 counters covers every positive long. Recording is a few shifts
+ * and one increment.
+ *
+ * @see BSTreeStats
+ */
+class LatencyHistogram {
+
+    /**
+     * the number of bits of a value kept below its highest set bit
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * the number of buckets each power of two is split into
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * the number of values counted in each bucket
+     */
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+
+    /**
+     * the number of values recorded
+     */
+    private long total;
+
+    /**
+     * the sum of the values recorded
+     */
+    private long sum;
+
+    /**
+     * the largest value recorded
+     */
+    private long max;
+
+    /**
+     * Gives the bucket of the specified value
+     *
+     * @param value a non-negative value
+     * @return the index of its bucket
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gives the largest value counted in the specified bucket
+     *
+     * @param bucket the index of a bucket
+     * @return the largest value in the bucket
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Counts a value
+     *
+     * @param value a duration in nanoseconds; negative values count as 0
+     */
+    void record(long value) {
+        value = Math.max(value, 0);
+        counts[bucket(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Gives the number of values recorded
+     *
+     * @return the number of values
+     */
+    long count() {
+        return total;
+    }
+
+    /**
+     * Gives the mean of the values recorded
+     *
+     * @return the mean, or 0 if there are none
+     */
+    double mean() {
+        return (total == 0) ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Gives the largest value recorded
+     *
+     * @return the maximum, or 0 if there are none
+     */
+    long max() {
+        return max;
+    }
+
+    /**
+     * Gives the value at or below which the specified fraction of the
+     * values recorded lie, as the largest value of its bucket
+     *
+     * @param fraction a fraction from 0 to 1
+     * @return the percentile, or 0 if there are no values
+     */
+    long percentile(double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+}
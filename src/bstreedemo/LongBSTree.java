@@ -0,0 +1,431 @@
+package bstreedemo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A binary search tree of long keys <br>
+ * The operations of BSTreeAPI specialized for long: the keys are stored
+ * unboxed in the nodes and compared with &lt; and &gt;, so lookups
+ * allocate nothing and no node refers to a Long.
+ *
+ * @see BSTreeAPI
+ * @see IntBSTree
+ */
+public class LongBSTree
+{
+
+    /**
+     * the root of this tree
+     */
+    private Node root;
+
+    /**
+     * the number of nodes in this tree
+     */
+    private int size;
+
+    /**
+     * A node of a tree stores a key and references to the child nodes to
+     * the left and to the right. The class is static, so a node carries no
+     * reference to its tree.
+     */
+    private static class Node {
+
+        /**
+         * the key in this node
+         */
+        long key;
+        /**
+         * A reference to the left subtree rooted at this node.
+         */
+        Node left;
+        /**
+         * A reference to the right subtree rooted at this node
+         */
+        Node right;
+
+        Node(long key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Constructs an empty tree
+     */
+    public LongBSTree() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Determines whether the binary search tree is empty.
+     *
+     * @return true if the tree is empty; otherwise false
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Gives the size of the binary search tree
+     *
+     * @return the number of nodes in this tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Inserts a key into the tree; does nothing if the key is in the tree.
+     *
+     * @param key the key to be inserted.
+     */
+    public void insert(long key) {
+        if (root == null) {
+            root = new Node(key);
+            size++;
+            return;
+        }
+        Node tmp = root;
+        while (true) {
+            if (key < tmp.key) {
+                if (tmp.left == null) {
+                    tmp.left = new Node(key);
+                    size++;
+                    return;
+                }
+                tmp = tmp.left;
+            } else if (key > tmp.key) {
+                if (tmp.right == null) {
+                    tmp.right = new Node(key);
+                    size++;
+                    return;
+                }
+                tmp = tmp.right;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determines whether a key is in the tree.
+     *
+     * @param key the key to search for.
+     * @return true on success; false on failure.
+     */
+    public boolean inTree(long key) {
+        Node tmp = root;
+        while (tmp != null) {
+            if (key < tmp.key) {
+                tmp = tmp.left;
+            } else if (key > tmp.key) {
+                tmp = tmp.right;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives the key in the tree equal to the specified key. If the key does
+     * not exist, an exception occurs.
+     *
+     * @param key the key to be retrieved.
+     * @return the key
+     * @throws BSTreeException when the key is not in the tree
+     */
+    public long retrieve(long key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        if (!inTree(key)) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return key;
+    }
+
+    /**
+     * Deletes a key from the tree. The parent of the node is tracked during
+     * the single descent, and a node with two children takes the key of its
+     * in-order successor, whose node is unlinked instead.
+     *
+     * @param key the key to be deleted.
+     */
+    public void remove(long key) {
+        Node parent = null;
+        Node node = root;
+        while (node != null && node.key != key) {
+            parent = node;
+            node = (key < node.key) ? node.left : node.right;
+        }
+        if (node == null) {
+            return;
+        }
+        if (node.left != null && node.right != null) {
+            Node successorParent = node;
+            Node successor = node.right;
+            while (successor.left != null) {
+                successorParent = successor;
+                successor = successor.left;
+            }
+            node.key = successor.key;
+            parent = successorParent;
+            node = successor;
+        }
+        Node replacement = (node.left != null) ? node.left : node.right;
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == node) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        size--;
+    }
+
+    /**
+     * finds the minimum key of the tree.
+     *
+     * @return the minimum key in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public long min() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        Node traverser = root;
+        while (traverser.left != null) {
+            traverser = traverser.left;
+        }
+        return traverser.key;
+    }
+
+    /**
+     * finds the maximum key of the tree.
+     *
+     * @return the maximum key in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public long max() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        Node traverser = root;
+        while (traverser.right != null) {
+            traverser = traverser.right;
+        }
+        return traverser.key;
+    }
+
+    /**
+     * Traverses the tree in inorder and applies the consumer to each key.
+     *
+     * @param func a consumer applied to each key during the traversal
+     */
+    public void inorderTraverse(LongConsumer func) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            func.accept(node.key);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Traverses the tree in preorder and applies the consumer to each key.
+     *
+     * @param func a consumer applied to each key during the traversal
+     */
+    public void preorderTraverse(LongConsumer func) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        if (root != null) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            func.accept(node.key);
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+            if (node.left != null) {
+                stack.push(node.left);
+            }
+        }
+    }
+
+    /**
+     * Traverses the tree in postorder and applies the consumer to each key.
+     *
+     * @param func a consumer applied to each key during the traversal
+     */
+    public void postorderTraverse(LongConsumer func) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        Node lastVisited = null;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            Node top = stack.peek();
+            if (top.right != null && top.right != lastVisited) {
+                node = top.right;
+            } else {
+                func.accept(top.key);
+                lastVisited = stack.pop();
+            }
+        }
+    }
+
+    /**
+     * returns an array containing the keys of the tree in ascending order
+     *
+     * @return the keys in ascending order; empty if the tree is empty
+     */
+    public long[] sort() {
+        long[] keys = new long[size];
+        int[] next = new int[1];
+        inorderTraverse(key -> keys[next[0]++] = key);
+        return keys;
+    }
+
+    /**
+     * Delete all leaf nodes of this tree and decrement the size of the tree.
+     * Does nothing if the tree is empty.
+     */
+    public void trim() {
+        if (root == null) {
+            return;
+        }
+        if (root.left == null && root.right == null) {
+            root = null;
+            size = 0;
+            return;
+        }
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.left != null) {
+                if (node.left.left == null && node.left.right == null) {
+                    node.left = null;
+                    size--;
+                } else {
+                    stack.push(node.left);
+                }
+            }
+            if (node.right != null) {
+                if (node.right.left == null && node.right.right == null) {
+                    node.right = null;
+                    size--;
+                } else {
+                    stack.push(node.right);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives an array list containing all the root-to-leaf paths of the tree
+     * in the format n1->n2->n3...nk, where n1 is the root and nk a leaf.
+     *
+     * @return an array list of the root-to-leaf paths
+     * @throws BSTreeException when the tree is empty
+     */
+    public ArrayList<String> getPaths() throws BSTreeException {
+        if (root == null) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        ArrayDeque<String> prefixes = new ArrayDeque<>();
+        nodes.push(root);
+        prefixes.push("");
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            String pStr = prefixes.pop() + node.key;
+            if (node.left == null && node.right == null) {
+                paths.add(pStr);
+                continue;
+            }
+            pStr = pStr + "->";
+            if (node.right != null) {
+                nodes.push(node.right);
+                prefixes.push(pStr);
+            }
+            if (node.left != null) {
+                nodes.push(node.left);
+                prefixes.push(pStr);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Gives the diameter of this tree.
+     *
+     * @return the number of nodes along the longest path in the tree
+     */
+    public int diameter() {
+        return heightAndDiameter()[1];
+    }
+
+    /**
+     * Gives the height of this tree.
+     *
+     * @return the number of nodes along the longest root-to-leaf path, or 0
+     * if the tree is empty
+     */
+    public int height() {
+        return heightAndDiameter()[0];
+    }
+
+    /**
+     * An auxiliary method of the diameter and height methods that visits
+     * the tree once, post-order, keeping the heights of the visited
+     * subtrees on a stack from which each node pops its children's.
+     *
+     * @return the height and the diameter of the tree
+     */
+    private int[] heightAndDiameter() {
+        if (root == null) {
+            return new int[] {0, 0};
+        }
+        int[] heights = new int[16];
+        int top = 0;
+        int longest = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        Node lastVisited = null;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            Node visit = stack.peek();
+            if (visit.right != null && visit.right != lastVisited) {
+                node = visit.right;
+                continue;
+            }
+            lastVisited = stack.pop();
+            int right = (visit.right != null) ? heights[--top] : 0;
+            int left = (visit.left != null) ? heights[--top] : 0;
+            longest = Math.max(longest, 1 + left + right);
+            if (top == heights.length) {
+                heights = Arrays.copyOf(heights, 2 * top);
+            }
+            heights[top++] = 1 + Math.max(left, right);
+        }
+        return new int[] {heights[0], longest};
+    }
+}
@@ -0,0 +1,128 @@
+package bstreedemo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a region of a file through a memory-mapped window <br>
+ * A single mapping holds at most 2 GB, so the region is read through a
+ * window of up to WINDOW bytes that is mapped again further on whenever
+ * fewer bytes are left in it than the caller asks for. Two inputs on the
+ * same channel read two regions of a file side by side.
+ *
+ * @see BSTree#load
+ */
+class MappedInput {
+
+    /**
+     * the largest number of bytes mapped at once
+     */
+    static final int WINDOW = 1 << 30;
+
+    /**
+     * the file read from
+     */
+    private final FileChannel channel;
+
+    /**
+     * the offset in the file of the end of the region
+     */
+    private final long end;
+
+    /**
+     * the offset in the file of the start of the window
+     */
+    private long base;
+
+    /**
+     * the mapped window, positioned at the next byte to read
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Constructs an input reading the specified region of a file
+     *
+     * @param channel the file read from
+     * @param start the offset of the first byte of the region
+     * @param end the offset just past the last byte of the region
+     */
+    MappedInput(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.end = end;
+        base = start;
+        window = null;
+    }
+
+    /**
+     * Gives the offset in the file of the next byte to read
+     *
+     * @return the offset of the next byte
+     */
+    long position() {
+        return (window == null) ? base : base + window.position();
+    }
+
+    /**
+     * Gives the number of bytes of the region not read yet
+     *
+     * @return the bytes left
+     */
+    long remaining() {
+        return end - position();
+    }
+
+    /**
+     * Gives the window with at least the specified number of bytes left
+     * in it, mapping the window again from the next byte if it has fewer
+     *
+     * @param bytes the number of bytes the caller is about to read
+     * @return the window, positioned at the next byte
+     * @throws IOException when the region ends first or the mapping fails
+     */
+    ByteBuffer require(int bytes) throws IOException {
+        if (window != null && window.remaining() >= bytes) {
+            return window;
+        }
+        long next = position();
+        if (end - next < bytes) {
+            throw new EOFException("Snapshot ends inside a record.");
+        }
+        base = next;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(end - base, WINDOW));
+        return window;
+    }
+
+    /**
+     * Reads one byte
+     *
+     * @return the byte
+     * @throws IOException when the region has ended
+     */
+    byte get() throws IOException {
+        return require(1).get();
+    }
+
+    /**
+     * Reads an unsigned int written seven bits per byte, low bits first,
+     * with the high bit of each byte but the last set
+     *
+     * @return the int
+     * @throws IOException when the region ends inside the int, or
+     * StreamCorruptedException when the int is longer than five bytes
+     */
+    int getVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed length in snapshot.");
+    }
+}
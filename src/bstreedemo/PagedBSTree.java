@@ -0,0 +1,1010 @@
+package bstreedemo;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * A B+-tree kept in a file <br>
+ * The tree is stored in fixed-size pages: page 0 holds the size of the
+ * tree and the number of its root page, and every other page is a node.
+ * The data lives in the leaves, which are linked in ascending order; the
+ * internal pages hold copies of keys that route each search to one child.
+ * A bounded cache holds the pages last used, decoded, and writes a changed
+ * page back to the file when the CLOCK algorithm evicts it or the tree is
+ * flushed, so the heap used does not depend on the size of the tree.
+ * <br>
+ * Pages left underfull by remove are not merged with their neighbors: an
+ * emptied leaf stays linked and takes the inserts that fall into its range
+ * again. The tree never gets shorter, and a file only grows.
+ * <br>
+ * Pages are written back in place, so the file holds a tree only as of
+ * the last flush or close, and only until a changed page is written to it
+ * again. The first such write after a flush marks the file as unflushed,
+ * and a file so marked, or left by a crash before its first flush, cannot
+ * be opened: flush is not a point a crash returns to once the tree has
+ * changed since.
+ * <br>
+ * The operations of BSTreeAPI that follow the shape of a tree follow the
+ * pages: preorder and postorder visit the keys of each page, getPaths
+ * gives the paths of pages from the root to each leaf. trim, which would
+ * delete every key, is not supported.
+ *
+ * @param <E> the tree data type
+ * @see BSTreeAPI
+ * @see BSTreeCodec
+ */
+public class PagedBSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Closeable
+{
+
+    /**
+     * the number standing for no page
+     */
+    private static final int NIL = 0;
+
+    /**
+     * the first four bytes of the file, "BPT1"
+     */
+    private static final int MAGIC = 0x42505431;
+
+    /**
+     * the number of bytes of a node page before its entries: the kind of
+     * the page, the number of keys and two page numbers
+     */
+    private static final int HEADER = 11;
+
+    /**
+     * the smallest number of pages the cache holds; every page a single
+     * operation touches stays in the cache until the operation ends
+     */
+    private static final int MIN_CACHE_PAGES = 16;
+
+    /**
+     * the file holding the pages
+     */
+    private final FileChannel channel;
+
+    /**
+     * encodes and decodes the keys
+     */
+    private final BSTreeCodec<E> codec;
+
+    /**
+     * the number of bytes in a page
+     */
+    private final int pageSize;
+
+    /**
+     * the largest number of bytes a key may be encoded in, so that any
+     * page that overflows holds at least four entries to split
+     */
+    private final int maxKeyBytes;
+
+    /**
+     * the largest number of pages the cache holds
+     */
+    private final int cachePages;
+
+    /**
+     * the cached pages by page number
+     */
+    private final HashMap<Integer, Page> cache;
+
+    /**
+     * the cached pages in the order the clock hand sweeps them
+     */
+    private final ArrayList<Page> clock;
+
+    /**
+     * the index in clock of the next page the hand looks at
+     */
+    private int hand;
+
+    /**
+     * the number of the current operation; pages touched by it are not
+     * evicted
+     */
+    private long operation;
+
+    /**
+     * transfers one page between the file and the cache
+     */
+    private final ByteBuffer frame;
+
+    /**
+     * holds the bytes of a key being measured
+     */
+    private ByteBuffer scratch;
+
+    /**
+     * the number of the root page
+     */
+    private int root;
+
+    /**
+     * the number of levels of pages; the leaves are level 1
+     */
+    private int levels;
+
+    /**
+     * the number of pages in the file, page 0 included
+     */
+    private int pageCount;
+
+    /**
+     * the number of keys in this tree
+     */
+    private int size;
+
+    /**
+     * whether the file is marked as holding the tree as it was last
+     * flushed; the first page written after a flush clears the mark
+     */
+    private boolean clean;
+
+    /**
+     * A page of the tree, decoded. A leaf holds keys and the numbers of
+     * its neighbors; an internal page holds one more child than keys, the
+     * keys of children[i] being at least keys[i - 1] and less than keys[i].
+     */
+    private class Page {
+
+        /**
+         * the number of this page
+         */
+        final int id;
+        /**
+         * whether this page is a leaf
+         */
+        final boolean leaf;
+        /**
+         * the keys in ascending order
+         */
+        ArrayList<E> keys;
+        /**
+         * the page numbers of the children; only used by internal pages
+         */
+        int[] children;
+        /**
+         * the numbers of the next and previous leaves, or NIL
+         */
+        int next, prev;
+        /**
+         * the number of bytes this page takes when encoded
+         */
+        int bytes;
+        /**
+         * whether this page differs from its copy in the file
+         */
+        boolean dirty;
+        /**
+         * whether this page was used since the clock hand last passed it
+         */
+        boolean referenced;
+        /**
+         * the number of the last operation that used this page
+         */
+        long touched;
+
+        Page(int id, boolean leaf) {
+            this.id = id;
+            this.leaf = leaf;
+            keys = new ArrayList<>();
+            children = leaf ? null : new int[8];
+            next = NIL;
+            prev = NIL;
+            bytes = HEADER;
+        }
+
+        /**
+         * Gives the number of bytes the specified entry takes when encoded
+         *
+         * @param i the index of a key
+         * @return the bytes of the key, its length and, in an internal
+         * page, the child after it
+         */
+        int entryBytes(int i) {
+            int length = keyLength(keys.get(i));
+            return varintLength(length) + length + (leaf ? 0 : 4);
+        }
+
+        /**
+         * Recomputes the number of bytes this page takes when encoded
+         */
+        void measure() {
+            bytes = HEADER;
+            for (int i = 0; i < keys.size(); i++) {
+                bytes += entryBytes(i);
+            }
+        }
+
+        /**
+         * Gives the index of the child whose subtree holds the specified
+         * key: the number of keys not greater than it
+         *
+         * @param key a data key
+         * @return the index in children
+         */
+        int childIndex(E key) {
+            int lo = 0;
+            int hi = keys.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys.get(mid).compareTo(key) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Inserts a child into an internal page whose new key is already
+         * in place, shifting the children from the specified index right
+         *
+         * @param i the index at which the child is inserted
+         * @param child the page number of the child
+         */
+        void insertChild(int i, int child) {
+            int count = keys.size();
+            if (count + 1 > children.length) {
+                children = Arrays.copyOf(children, 2 * children.length);
+            }
+            System.arraycopy(children, i, children, i + 1, count - i);
+            children[i] = child;
+        }
+    }
+
+    /**
+     * Opens the tree in the specified file, with pages of 4 KB and a cache
+     * of 1024 pages, creating an empty tree if the file is empty or does
+     * not exist
+     *
+     * @param file the file of the tree
+     * @param codec encodes and decodes the keys
+     * @throws IOException when the file cannot be opened, is not a tree,
+     * or was changed after it was last flushed
+     */
+    public PagedBSTree(Path file, BSTreeCodec<E> codec) throws IOException {
+        this(file, codec, 4096, 1024);
+    }
+
+    /**
+     * Opens the tree in the specified file, creating an empty tree with
+     * pages of the specified size if the file is empty or does not exist;
+     * an existing tree keeps the page size it was created with
+     *
+     * @param file the file of the tree
+     * @param codec encodes and decodes the keys
+     * @param pageSize the number of bytes in a page of a new tree
+     * @param cachePages the largest number of pages kept in the heap
+     * @throws IOException when the file cannot be opened, is not a tree,
+     * or was changed after it was last flushed
+     */
+    public PagedBSTree(Path file, BSTreeCodec<E> codec, int pageSize, int cachePages)
+            throws IOException {
+        this.codec = codec;
+        this.cachePages = Math.max(cachePages, MIN_CACHE_PAGES);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > 0) {
+            ByteBuffer meta = ByteBuffer.allocate(28);
+            readFully(meta, 0);
+            meta.flip();
+            if (meta.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a paged tree: " + file);
+            }
+            pageSize = meta.getInt();
+            root = meta.getInt();
+            levels = meta.getInt();
+            pageCount = meta.getInt();
+            size = meta.getInt();
+            if (meta.getInt() != 1) {
+                channel.close();
+                throw new IOException("Paged tree changed after it was last flushed: " + file);
+            }
+        } else {
+            if (pageSize < 128 || pageSize > 65536) {
+                channel.close();
+                throw new IllegalArgumentException("Page size out of range: " + pageSize);
+            }
+            root = NIL;
+            levels = 0;
+            pageCount = 1;
+            size = 0;
+        }
+        this.pageSize = pageSize;
+        clean = true;
+        maxKeyBytes = (pageSize - HEADER) / 4 - 9;
+        cache = new HashMap<>();
+        clock = new ArrayList<>();
+        hand = 0;
+        operation = 0;
+        frame = ByteBuffer.allocateDirect(pageSize);
+        scratch = ByteBuffer.allocate(64);
+    }
+
+    /**
+     * Reads bytes from the file until the buffer is full
+     *
+     * @param buffer the buffer read into
+     * @param position the offset in the file of the first byte
+     * @throws IOException when the file ends first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Paged tree file ends inside a page.");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Gives the number of bytes a key is encoded in, leaving them in
+     * scratch
+     *
+     * @param key a data key
+     * @return the length of the encoded key
+     */
+    private int keyLength(E key) {
+        while (true) {
+            try {
+                scratch.clear();
+                codec.encode(key, scratch);
+                return scratch.position();
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(2 * scratch.capacity());
+            }
+        }
+    }
+
+    /**
+     * Gives the number of bytes an unsigned int takes written seven bits
+     * per byte
+     *
+     * @param value a non-negative int
+     * @return the number of bytes, 1 to 5
+     */
+    private static int varintLength(int value) {
+        int bytes = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives the specified page from the cache, reading it from the file
+     * if it is not there, and marks it used by the current operation
+     *
+     * @param id the number of a page
+     * @return the decoded page
+     */
+    private Page page(int id) {
+        Page page = cache.get(id);
+        if (page == null) {
+            try {
+                page = read(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            admit(page);
+        }
+        page.referenced = true;
+        page.touched = operation;
+        return page;
+    }
+
+    /**
+     * Creates a page at the end of the file, in the cache only until it is
+     * written back
+     *
+     * @param leaf whether the page is a leaf
+     * @return the new page
+     */
+    private Page allocate(boolean leaf) {
+        Page page = new Page(pageCount++, leaf);
+        page.dirty = true;
+        admit(page);
+        page.referenced = true;
+        page.touched = operation;
+        return page;
+    }
+
+    /**
+     * Puts a page in the cache, first evicting the page the clock hand
+     * finds unused since it last passed when the cache is full. Pages the
+     * current operation has touched are passed over; if every page has
+     * been, the cache holds one more page until some are free again.
+     *
+     * @param page a page not in the cache
+     */
+    private void admit(Page page) {
+        if (clock.size() >= cachePages) {
+            for (int looked = 0; looked < 2 * clock.size(); looked++) {
+                if (hand >= clock.size()) {
+                    hand = 0;
+                }
+                Page victim = clock.get(hand);
+                if (victim.touched == operation) {
+                    hand++;
+                } else if (victim.referenced) {
+                    victim.referenced = false;
+                    hand++;
+                } else {
+                    if (victim.dirty) {
+                        try {
+                            write(victim);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    cache.remove(victim.id);
+                    clock.set(hand++, page);
+                    cache.put(page.id, page);
+                    return;
+                }
+            }
+        }
+        clock.add(page);
+        cache.put(page.id, page);
+    }
+
+    /**
+     * Reads and decodes a page of the file
+     *
+     * @param id the number of the page
+     * @return the decoded page
+     * @throws IOException when reading the file fails
+     */
+    private Page read(int id) throws IOException {
+        frame.clear();
+        readFully(frame, (long) id * pageSize);
+        frame.flip();
+        boolean leaf = frame.get() == 0;
+        int count = frame.getChar();
+        Page page = new Page(id, leaf);
+        if (leaf) {
+            page.next = frame.getInt();
+            page.prev = frame.getInt();
+        } else {
+            page.children = new int[Math.max(8, count + 1)];
+            page.children[0] = frame.getInt();
+            frame.getInt();
+        }
+        page.keys.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = frame.get();
+                length |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int end = frame.position() + length;
+            page.keys.add(codec.decode(frame, length));
+            frame.position(end);
+            if (!leaf) {
+                page.children[i + 1] = frame.getInt();
+            }
+        }
+        page.bytes = frame.position();
+        return page;
+    }
+
+    /**
+     * Encodes a page and writes it to its place in the file, first marking
+     * the file as unflushed if it is not marked so yet
+     *
+     * @param page a changed page
+     * @throws IOException when writing the file fails
+     */
+    private void write(Page page) throws IOException {
+        if (clean) {
+            writeMeta(false);
+            channel.force(false);
+            clean = false;
+        }
+        frame.clear();
+        frame.put((byte) (page.leaf ? 0 : 1));
+        frame.putChar((char) page.keys.size());
+        frame.putInt(page.leaf ? page.next : page.children[0]);
+        frame.putInt(page.leaf ? page.prev : NIL);
+        for (int i = 0; i < page.keys.size(); i++) {
+            int length = keyLength(page.keys.get(i));
+            for (; length >= 0x80; length >>>= 7) {
+                frame.put((byte) (length | 0x80));
+            }
+            frame.put((byte) length);
+            scratch.flip();
+            frame.put(scratch);
+            if (!page.leaf) {
+                frame.putInt(page.children[i + 1]);
+            }
+        }
+        while (frame.hasRemaining()) {
+            frame.put((byte) 0);
+        }
+        frame.flip();
+        long position = (long) page.id * pageSize;
+        while (frame.hasRemaining()) {
+            position += channel.write(frame, position);
+        }
+        page.dirty = false;
+    }
+
+    /**
+     * Writes every changed page to the file and forces it to the storage
+     * device, then writes the size and root of the tree marked as flushed
+     * and forces the file again. The file holds the tree as it is now
+     * until the next changed page is written to it, by this method or by
+     * an eviction from the cache; only a tree flushed or closed with no
+     * change since can be opened again.
+     *
+     * @throws IOException when writing the file fails
+     */
+    public void flush() throws IOException {
+        for (Page page : clock) {
+            if (page.dirty) {
+                write(page);
+            }
+        }
+        channel.force(false);
+        writeMeta(true);
+        channel.force(false);
+        clean = true;
+    }
+
+    /**
+     * Writes page 0: the size and root of the tree and whether the file
+     * holds the tree as flushed
+     *
+     * @param flushed whether every page of the tree has been written
+     * @throws IOException when writing the file fails
+     */
+    private void writeMeta(boolean flushed) throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(pageSize);
+        meta.putInt(MAGIC).putInt(pageSize).putInt(root).putInt(levels)
+                .putInt(pageCount).putInt(size).putInt(flushed ? 1 : 0);
+        meta.clear();
+        long position = 0;
+        while (meta.hasRemaining()) {
+            position += channel.write(meta, position);
+        }
+    }
+
+    /**
+     * Flushes the tree and closes its file
+     *
+     * @throws IOException when writing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the leaf whose range holds the specified key
+     *
+     * @param key a data key
+     * @return the leaf, or null if the tree has no pages
+     */
+    private Page findLeaf(E key) {
+        operation++;
+        if (root == NIL) {
+            return null;
+        }
+        Page page = page(root);
+        while (!page.leaf) {
+            page = page(page.children[page.childIndex(key)]);
+        }
+        return page;
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        Page leaf = findLeaf(item);
+        return leaf != null && Collections.binarySearch(leaf.keys, item) >= 0;
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        Page leaf = findLeaf(key);
+        int i = Collections.binarySearch(leaf.keys, key);
+        if (i < 0) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return leaf.keys.get(i);
+    }
+
+    /**
+     * Inserts an item into the tree, replacing an equal item. A page that
+     * no longer fits is split in two at the middle of its bytes, and the
+     * first key of the new right page is inserted into the parent, which
+     * may split in turn; a split root gets a new root above it.
+     *
+     * @param item the value to be inserted
+     * @throws IllegalArgumentException when the encoded item takes more
+     * than a quarter of a page
+     */
+    @Override
+    public void insert(E item) {
+        int length = keyLength(item);
+        if (length > maxKeyBytes) {
+            throw new IllegalArgumentException("A key of " + length
+                    + " bytes does not fit pages of " + pageSize + " bytes.");
+        }
+        operation++;
+        if (root == NIL) {
+            Page leaf = allocate(true);
+            root = leaf.id;
+            levels = 1;
+        }
+        int[] path = new int[levels];
+        int[] slots = new int[levels];
+        Page page = page(root);
+        for (int level = 0; !page.leaf; level++) {
+            path[level] = page.id;
+            slots[level] = page.childIndex(item);
+            page = page(page.children[slots[level]]);
+        }
+        int i = Collections.binarySearch(page.keys, item);
+        int entry = varintLength(length) + length;
+        if (i >= 0) {
+            int old = keyLength(page.keys.get(i));
+            page.keys.set(i, item);
+            page.bytes += entry - (varintLength(old) + old);
+        } else {
+            page.keys.add(-i - 1, item);
+            page.bytes += entry;
+            size++;
+        }
+        page.dirty = true;
+        for (int level = levels - 2; page.bytes > pageSize; level--) {
+            Page right = split(page);
+            E separator = right.leaf ? right.keys.get(0) : right.keys.remove(0);
+            if (!right.leaf) {
+                right.measure();
+            }
+            if (level < 0) {
+                Page top = allocate(false);
+                top.children[0] = page.id;
+                top.keys.add(separator);
+                top.children[1] = right.id;
+                top.measure();
+                root = top.id;
+                levels++;
+                return;
+            }
+            page = page(path[level]);
+            page.keys.add(slots[level], separator);
+            page.insertChild(slots[level] + 1, right.id);
+            page.measure();
+            page.dirty = true;
+        }
+    }
+
+    /**
+     * An auxiliary method of insert that moves the upper half of the bytes
+     * of an overfull page into a new page to its right. For an internal
+     * page the first key moved is the one its parent will route by, and
+     * the caller takes it out of the new page, whose children are those
+     * after that key.
+     *
+     * @param page an overfull page
+     * @return the new page
+     */
+    private Page split(Page page) {
+        int count = page.keys.size();
+        int half = (page.bytes - HEADER) / 2;
+        int s = 0;
+        for (int bytes = 0; s < count && bytes < half; s++) {
+            bytes += page.entryBytes(s);
+        }
+        s = Math.max(1, Math.min(s, page.leaf ? count - 1 : count - 2));
+        Page right = allocate(page.leaf);
+        right.keys.addAll(page.keys.subList(s, count));
+        page.keys.subList(s, count).clear();
+        if (page.leaf) {
+            right.next = page.next;
+            right.prev = page.id;
+            if (page.next != NIL) {
+                Page after = page(page.next);
+                after.prev = right.id;
+                after.dirty = true;
+            }
+            page.next = right.id;
+        } else {
+            right.children = new int[Math.max(8, count - s)];
+            System.arraycopy(page.children, s + 1, right.children, 0, count - s);
+        }
+        page.measure();
+        right.measure();
+        page.dirty = true;
+        return right;
+    }
+
+    /**
+     * Deletes an item from the leaf holding it. The leaf is not merged
+     * with a neighbor however few keys it has left.
+     *
+     * @param item item with a specified search key.
+     */
+    @Override
+    public void remove(E item) {
+        Page leaf = findLeaf(item);
+        if (leaf == null) {
+            return;
+        }
+        int i = Collections.binarySearch(leaf.keys, item);
+        if (i < 0) {
+            return;
+        }
+        leaf.bytes -= leaf.entryBytes(i);
+        leaf.keys.remove(i);
+        leaf.dirty = true;
+        size--;
+    }
+
+    /**
+     * Gives the leftmost or the rightmost leaf holding a key
+     *
+     * @param last whether the rightmost leaf is wanted
+     * @return the leaf
+     * @throws BSTreeException when the tree is empty
+     */
+    private Page endLeaf(boolean last) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        operation++;
+        Page page = page(root);
+        while (!page.leaf) {
+            page = page(page.children[last ? page.keys.size() : 0]);
+        }
+        while (page.keys.isEmpty()) {
+            page = page(last ? page.prev : page.next);
+        }
+        return page;
+    }
+
+    /**
+     * finds the minimum value of the tree.
+     *
+     * @return the minimum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E min() throws BSTreeException {
+        return endLeaf(false).keys.get(0);
+    }
+
+    /**
+     * finds the maximum value of the tree.
+     *
+     * @return the maximum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E max() throws BSTreeException {
+        Page leaf = endLeaf(true);
+        return leaf.keys.get(leaf.keys.size() - 1);
+    }
+
+    /**
+     * Applies the function to every key, following the chain of leaves
+     * from the leftmost.
+     *
+     * @param func a function applied to each key in ascending order
+     */
+    @Override
+    public void inorderTraverse(Function func) {
+        if (size == 0) {
+            return;
+        }
+        operation++;
+        Page page = page(root);
+        while (!page.leaf) {
+            page = page(page.children[0]);
+        }
+        while (true) {
+            for (E key : page.keys) {
+                func.apply(key);
+            }
+            if (page.next == NIL) {
+                return;
+            }
+            operation++;
+            page = page(page.next);
+        }
+    }
+
+    /**
+     * Applies the function to the keys of every page, a page before the
+     * pages below it and the children of a page from left to right. The
+     * keys of an internal page are copies that route searches, and may be
+     * keys since removed from the tree.
+     *
+     * @param func a function applied to each key of each page
+     */
+    @Override
+    public void preorderTraverse(Function func) {
+        if (root != NIL) {
+            traverse(root, func, true);
+        }
+    }
+
+    /**
+     * Applies the function to the keys of every page, a page after the
+     * pages below it and the children of a page from left to right. The
+     * keys of an internal page are copies that route searches, and may be
+     * keys since removed from the tree.
+     *
+     * @param func a function applied to each key of each page
+     */
+    @Override
+    public void postorderTraverse(Function func) {
+        if (root != NIL) {
+            traverse(root, func, false);
+        }
+    }
+
+    /**
+     * An auxiliary method of preorderTraverse and postorderTraverse. The
+     * keys and children of a page are copied before the function is
+     * applied, since the page may leave the cache while those below it
+     * are read.
+     *
+     * @param id the number of a page
+     * @param func a function applied to each key of each page
+     * @param pre whether a page is visited before the pages below it
+     */
+    private void traverse(int id, Function func, boolean pre) {
+        operation++;
+        Page page = page(id);
+        ArrayList<E> keys = new ArrayList<>(page.keys);
+        int[] children = page.leaf ? null : Arrays.copyOf(page.children, keys.size() + 1);
+        if (pre) {
+            for (E key : keys) {
+                func.apply(key);
+            }
+        }
+        if (children != null) {
+            for (int child : children) {
+                traverse(child, func, pre);
+            }
+        }
+        if (!pre) {
+            for (E key : keys) {
+                func.apply(key);
+            }
+        }
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public ArrayList<E> sort() {
+        ArrayList<E> list = new ArrayList<>(size);
+        Function<E, Boolean> f = x -> list.add(x);
+        inorderTraverse(f);
+        return list;
+    }
+
+    /**
+     * Not supported. BSTree.trim deletes the leaf nodes and keeps the data
+     * of the nodes above them, but every key of a B+-tree lives in a leaf
+     * page and the pages above hold only copies that route searches, so
+     * no deletion of leaves leaves the same data behind.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void trim() {
+        throw new UnsupportedOperationException("trim() on a B+-tree would delete all its data.");
+    }
+
+    /**
+     * Gives the root-to-leaf paths of pages, leftmost first, each in the
+     * format p1->p2->...pk where each pi lists the keys of a page in
+     * brackets, p1 being the root page and pk a leaf. The keys of an
+     * internal page are copies that route searches, and may be keys since
+     * removed from the tree.
+     *
+     * @return an array list of strings containing all the root-to-leaf
+     * paths
+     * @throws BSTreeException when the tree is empty
+     */
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        collectPaths(root, new StringBuilder(), paths);
+        return paths;
+    }
+
+    /**
+     * An auxiliary method of getPaths that adds the paths through a page
+     *
+     * @param id the number of a page
+     * @param path the path down to the parent of the page
+     * @param paths receives each path
+     */
+    private void collectPaths(int id, StringBuilder path, ArrayList<String> paths) {
+        operation++;
+        Page page = page(id);
+        int length = path.length();
+        if (length > 0) {
+            path.append("->");
+        }
+        path.append(page.keys);
+        if (page.leaf) {
+            paths.add(path.toString());
+        } else {
+            int[] children = Arrays.copyOf(page.children, page.keys.size() + 1);
+            for (int child : children) {
+                collectPaths(child, path, paths);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * Gives the number of pages along the longest path between two pages;
+     * every leaf is at the same level, below a root with two children or
+     * more.
+     *
+     * @return the diameter in pages, or 0 if the tree has no pages
+     */
+    @Override
+    public int diameter() {
+        return (levels == 0) ? 0 : 2 * levels - 1;
+    }
+
+    /**
+     * Gives the number of levels of pages; every leaf is at the same level.
+     *
+     * @return the height in pages, or 0 if the tree has no pages
+     */
+    @Override
+    public int height() {
+        return levels;
+    }
+}
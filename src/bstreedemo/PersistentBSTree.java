@@ -0,0 +1,542 @@
+package bstreedemo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * A binary search tree whose versions are immutable <br>
+ * The nodes never change once built. An insert or remove copies only the
+ * nodes on the path it changes, rebalancing them AVL-style, and shares
+ * every other subtree with the previous version. plus and minus return
+ * the new version as a new tree; insert, remove and trim move this tree
+ * on to it. A version is published through one volatile field, so
+ * snapshot() is O(1) and any number of readers can work on a snapshot,
+ * or on this tree, without locks while a single writer moves forward.
+ *
+ * @param <E> the tree data type
+ * @see BSTreeAPI
+ */
+public class PersistentBSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Iterable<E>
+{
+
+    /**
+     * the current version of this tree
+     */
+    private volatile Version<E> current;
+
+    /**
+     * An immutable node. The height of its subtree is fixed when it is built.
+     */
+    private static final class Node<E> {
+
+        /**
+         * the data in this node
+         */
+        final E data;
+        /**
+         * A reference to the left subtree rooted at this node.
+         */
+        final Node<E> left;
+        /**
+         * A reference to the right subtree rooted at this node
+         */
+        final Node<E> right;
+        /**
+         * the number of nodes along the longest path from this node to a leaf
+         */
+        final int height;
+
+        Node(E data, Node<E> left, Node<E> right) {
+            this.data = data;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+        }
+    }
+
+    /**
+     * A version of the tree: its root and its size, published together.
+     */
+    private static final class Version<E> {
+
+        /**
+         * the root of the version, or null if it is empty
+         */
+        final Node<E> root;
+        /**
+         * the number of nodes in the version
+         */
+        final int size;
+
+        Version(Node<E> root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Constructs an empty tree
+     */
+    public PersistentBSTree() {
+        current = new Version<>(null, 0);
+    }
+
+    /**
+     * Constructs a tree at the specified version
+     *
+     * @param version a version of a tree
+     */
+    private PersistentBSTree(Version<E> version) {
+        current = version;
+    }
+
+    /**
+     * Gives a tree at the current version of this tree, sharing all of its
+     * nodes. Later changes to either tree do not show in the other.
+     *
+     * @return a snapshot of this tree, in O(1) time
+     */
+    public PersistentBSTree<E> snapshot() {
+        return new PersistentBSTree<>(current);
+    }
+
+    /**
+     * Gives the version of this tree with the specified item inserted,
+     * leaving this tree unchanged
+     *
+     * @param item the value to be inserted
+     * @return the new version
+     */
+    public PersistentBSTree<E> plus(E item) {
+        return new PersistentBSTree<>(inserted(current, item));
+    }
+
+    /**
+     * Gives the version of this tree with the specified item removed,
+     * leaving this tree unchanged
+     *
+     * @param item item with a specified search key
+     * @return the new version
+     */
+    public PersistentBSTree<E> minus(E item) {
+        return new PersistentBSTree<>(removed(current, item));
+    }
+
+    @Override
+    public void insert(E item) {
+        current = inserted(current, item);
+    }
+
+    @Override
+    public void remove(E item) {
+        current = removed(current, item);
+    }
+
+    /**
+     * Gives the specified version with the specified item inserted
+     *
+     * @param version a version of the tree
+     * @param item the value to be inserted
+     * @return the new version
+     */
+    private static <E extends Comparable<E>> Version<E> inserted(Version<E> version, E item) {
+        boolean[] added = new boolean[1];
+        Node<E> root = insert(version.root, item, added);
+        return new Version<>(root, version.size + (added[0] ? 1 : 0));
+    }
+
+    /**
+     * Gives the specified version with the specified item removed
+     *
+     * @param version a version of the tree
+     * @param item item with a specified search key
+     * @return the new version, or the same version if the item is absent
+     */
+    private static <E extends Comparable<E>> Version<E> removed(Version<E> version, E item) {
+        boolean[] found = new boolean[1];
+        Node<E> root = remove(version.root, item, found);
+        return found[0] ? new Version<>(root, version.size - 1) : version;
+    }
+
+    /**
+     * Gives the height of the subtree rooted at the specified node
+     *
+     * @param node a node or null
+     * @return the height of the node, or 0 for an empty subtree
+     */
+    private static int height(Node<?> node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    /**
+     * A recursive auxiliary method of insert that copies the path to the
+     * place of the specified item. The recursion is as deep as the tree,
+     * which stays balanced.
+     *
+     * @param node the root of a subtree
+     * @param item the value to be inserted
+     * @param added set to true when a node is added
+     * @return the root of the new subtree
+     */
+    private static <E extends Comparable<E>> Node<E> insert(Node<E> node, E item, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return new Node<>(item, null, null);
+        }
+        int d = node.data.compareTo(item);
+        if (d == 0) { /* Key already exists. (update) */
+            return (node.data == item) ? node : new Node<>(item, node.left, node.right);
+        } else if (d > 0) {
+            return balance(node.data, insert(node.left, item, added), node.right);
+        } else {
+            return balance(node.data, node.left, insert(node.right, item, added));
+        }
+    }
+
+    /**
+     * A recursive auxiliary method of remove that copies the path to the
+     * node holding the specified item
+     *
+     * @param node the root of a subtree
+     * @param item item with a specified search key
+     * @param found set to true when the item is found
+     * @return the root of the new subtree, or the same subtree if the item
+     * is not in it
+     */
+    private static <E extends Comparable<E>> Node<E> remove(Node<E> node, E item, boolean[] found) {
+        if (node == null) {
+            return null;
+        }
+        int d = node.data.compareTo(item);
+        if (d > 0) {
+            Node<E> left = remove(node.left, item, found);
+            return (left == node.left) ? node : balance(node.data, left, node.right);
+        } else if (d < 0) {
+            Node<E> right = remove(node.right, item, found);
+            return (right == node.right) ? node : balance(node.data, node.left, right);
+        }
+        found[0] = true;
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<E> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.data, node.left, removeFirst(node.right));
+    }
+
+    /**
+     * A recursive auxiliary method of remove that copies the path to the
+     * leftmost node of the specified subtree, leaving that node out
+     *
+     * @param node the root of a non-empty subtree
+     * @return the root of the new subtree
+     */
+    private static <E extends Comparable<E>> Node<E> removeFirst(Node<E> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.data, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * Builds a node over the specified subtrees, rotating when their heights
+     * differ by more than one
+     *
+     * @param data the data of the node
+     * @param left the left subtree
+     * @param right the right subtree
+     * @return the root of the balanced subtree
+     */
+    private static <E> Node<E> balance(E data, Node<E> left, Node<E> right) {
+        int balance = height(left) - height(right);
+        if (balance > 1) {
+            if (height(left.left) < height(left.right)) {
+                Node<E> pivot = left.right;
+                return new Node<>(pivot.data, new Node<>(left.data, left.left, pivot.left),
+                        new Node<>(data, pivot.right, right));
+            }
+            return new Node<>(left.data, left.left, new Node<>(data, left.right, right));
+        } else if (balance < -1) {
+            if (height(right.right) < height(right.left)) {
+                Node<E> pivot = right.left;
+                return new Node<>(pivot.data, new Node<>(data, left, pivot.left),
+                        new Node<>(right.data, pivot.right, right.right));
+            }
+            return new Node<>(right.data, new Node<>(data, left, right.left), right.right);
+        }
+        return new Node<>(data, left, right);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    /**
+     * An auxiliary method that gives the node holding the specified key
+     *
+     * @param key a data key
+     * @return the node, or null if the key is not in the current version
+     */
+    private Node<E> search(E key) {
+        Node<E> node = current.root;
+        while (node != null) {
+            int d = node.data.compareTo(key);
+            if (d == 0) {
+                return node;
+            }
+            node = (d > 0) ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        return search(item) != null;
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (current.size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        Node<E> node = search(key);
+        if (node == null) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return node.data;
+    }
+
+    /**
+     * finds the minimum value of the tree.
+     *
+     * @return the minimum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E min() throws BSTreeException {
+        Node<E> node = current.root;
+        if (node == null) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.data;
+    }
+
+    /**
+     * finds the maximum value of the tree.
+     *
+     * @return the maximum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E max() throws BSTreeException {
+        Node<E> node = current.root;
+        if (node == null) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.data;
+    }
+
+    /**
+     * Gives an iterator over the current version in ascending order. The
+     * iterator keeps working on that version whatever happens to this tree.
+     *
+     * @return an in-order iterator
+     */
+    @Override
+    public Iterator<E> iterator() {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        for (Node<E> node = current.root; node != null; node = node.left) {
+            stack.push(node);
+        }
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> node = stack.pop();
+                for (Node<E> next = node.right; next != null; next = next.left) {
+                    stack.push(next);
+                }
+                return node.data;
+            }
+        };
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        for (E item : this) {
+            func.apply(item);
+        }
+    }
+
+    @Override
+    public void preorderTraverse(Function func) {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        if (current.root != null) {
+            stack.push(current.root);
+        }
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            func.apply(node.data);
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+            if (node.left != null) {
+                stack.push(node.left);
+            }
+        }
+    }
+
+    @Override
+    public void postorderTraverse(Function func) {
+        ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+        ArrayDeque<Node<E>> output = new ArrayDeque<>();
+        if (current.root != null) {
+            stack.push(current.root);
+        }
+        /* a reversed right-first preorder visits the nodes in postorder */
+        while (!stack.isEmpty()) {
+            Node<E> node = stack.pop();
+            output.push(node);
+            if (node.left != null) {
+                stack.push(node.left);
+            }
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+        }
+        for (Node<E> node : output) {
+            func.apply(node.data);
+        }
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public ArrayList<E> sort() {
+        ArrayList<E> list = new ArrayList<>(current.size);
+        for (E item : this) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    /**
+     * Delete all leaf nodes of this tree and decrement the size of the tree.
+     * The nodes above the leaves are copied once; an AVL tree without its
+     * leaves is still balanced. Does nothing if the tree is empty.
+     */
+    @Override
+    public void trim() {
+        Version<E> version = current;
+        int[] leaves = new int[1];
+        Node<E> root = trim(version.root, leaves);
+        current = new Version<>(root, version.size - leaves[0]);
+    }
+
+    /**
+     * A recursive auxiliary method for the trim method.
+     *
+     * @param node the root of a subtree
+     * @param leaves incremented for each leaf left out
+     * @return the root of the subtree without its leaves
+     */
+    private static <E> Node<E> trim(Node<E> node, int[] leaves) {
+        if (node == null) {
+            return null;
+        }
+        if (node.left == null && node.right == null) {
+            leaves[0]++;
+            return null;
+        }
+        return new Node<>(node.data, trim(node.left, leaves), trim(node.right, leaves));
+    }
+
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        Node<E> root = current.root;
+        if (root == null) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        getPaths(root, new StringBuilder(), paths);
+        return paths;
+    }
+
+    /**
+     * A recursive auxiliary method for the getPaths method that appends to
+     * one buffer and cuts it back on the way up.
+     *
+     * @param node a node along the root-to-leaf path
+     * @param path the path leading to the node
+     * @param paths the root-to-leaf paths found so far
+     */
+    private static <E> void getPaths(Node<E> node, StringBuilder path, ArrayList<String> paths) {
+        int length = path.length();
+        path.append(node.data);
+        if (node.left == null && node.right == null) {
+            paths.add(path.toString());
+        } else {
+            path.append("->");
+            if (node.left != null) {
+                getPaths(node.left, path, paths);
+            }
+            if (node.right != null) {
+                getPaths(node.right, path, paths);
+            }
+        }
+        path.setLength(length);
+    }
+
+    @Override
+    public int diameter() {
+        return diameter(current.root);
+    }
+
+    /**
+     * A recursive auxiliary method of the diameter method; the heights are
+     * kept in the nodes, so each node is visited once.
+     *
+     * @param node the root of a subtree
+     * @return the diameter of the subtree
+     */
+    private static int diameter(Node<?> node) {
+        if (node == null) {
+            return 0;
+        }
+        int through = 1 + height(node.left) + height(node.right);
+        return Math.max(through, Math.max(diameter(node.left), diameter(node.right)));
+    }
+
+    @Override
+    public int height() {
+        return height(current.root);
+    }
+}
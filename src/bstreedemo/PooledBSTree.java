@@ -0,0 +1,507 @@
+package bstreedemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A binary search tree whose nodes live in parallel arrays <br>
+ * Node i is the data in keys[i] with the children left[i] and right[i],
+ * NIL standing for no child. Slots released by remove and trim are kept
+ * on a free list threaded through left[] and reused by insert, so a
+ * tree of n elements costs about 12 bytes per slot plus the elements,
+ * and no per-node objects for the garbage collector to trace.
+ *
+ * @param <E> the tree data type
+ * @see BSTreeAPI
+ * @see BSTree
+ */
+public class PooledBSTree<E extends Comparable<E>> implements BSTreeAPI<E>
+{
+
+    /**
+     * the index standing for no node
+     */
+    private static final int NIL = -1;
+
+    /**
+     * the data of the nodes
+     */
+    private Object[] keys;
+
+    /**
+     * the indices of the left children of the nodes; for a free slot, the
+     * index of the next free slot
+     */
+    private int[] left;
+
+    /**
+     * the indices of the right children of the nodes
+     */
+    private int[] right;
+
+    /**
+     * the index of the root of this tree, or NIL
+     */
+    private int root;
+
+    /**
+     * the head of the free list, or NIL
+     */
+    private int free;
+
+    /**
+     * the number of slots ever handed out; slots from here on are unused
+     */
+    private int used;
+
+    /**
+     * the number of nodes in this tree
+     */
+    private int size;
+
+    /**
+     * Constructs an empty tree
+     */
+    public PooledBSTree() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty tree with room for the specified number of nodes
+     * before its arrays grow
+     *
+     * @param capacity the initial number of slots
+     */
+    public PooledBSTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new Object[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        root = NIL;
+        free = NIL;
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * Gives the data of the specified node
+     *
+     * @param node the index of a node
+     * @return the data in the node
+     */
+    @SuppressWarnings("unchecked")
+    private E key(int node) {
+        return (E) keys[node];
+    }
+
+    /**
+     * Takes a slot for a new leaf from the free list, or from the unused
+     * slots, growing the arrays when none is left
+     *
+     * @param item the data of the new node
+     * @return the index of the new node
+     */
+    private int allocate(E item) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            if (used == keys.length) {
+                int capacity = 2 * used;
+                keys = Arrays.copyOf(keys, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+            }
+            node = used++;
+        }
+        keys[node] = item;
+        left[node] = NIL;
+        right[node] = NIL;
+        return node;
+    }
+
+    /**
+     * Puts the specified slot on the free list
+     *
+     * @param node the index of an unlinked node
+     */
+    private void release(int node) {
+        keys[node] = null;
+        right[node] = NIL;
+        left[node] = free;
+        free = node;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insert(E item) {
+        if (root == NIL) {
+            root = allocate(item);
+            size++;
+            return;
+        }
+        int tmp = root;
+        while (true) {
+            int d = key(tmp).compareTo(item);
+            if (d == 0) { /* Key already exists. (update) */
+                keys[tmp] = item;
+                return;
+            } else if (d > 0) {
+                if (left[tmp] == NIL) {
+                    int node = allocate(item);
+                    left[tmp] = node;
+                    size++;
+                    return;
+                }
+                tmp = left[tmp];
+            } else {
+                if (right[tmp] == NIL) {
+                    int node = allocate(item);
+                    right[tmp] = node;
+                    size++;
+                    return;
+                }
+                tmp = right[tmp];
+            }
+        }
+    }
+
+    /**
+     * An auxiliary method that gives the node holding the specified key
+     *
+     * @param key a data key
+     * @return the index of the node, or NIL
+     */
+    private int search(E key) {
+        int current = root;
+        while (current != NIL) {
+            int d = key(current).compareTo(key);
+            if (d == 0) {
+                return current;
+            }
+            current = (d > 0) ? left[current] : right[current];
+        }
+        return NIL;
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        return search(item) != NIL;
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        int node = search(key);
+        if (node == NIL) {
+            throw new BSTreeException("Existent key expected on retrieve().");
+        }
+        return key(node);
+    }
+
+    /**
+     * Deletes an item from the tree in a single descent that tracks the
+     * parent; a node with two children takes the data of its in-order
+     * successor, whose slot is released instead.
+     *
+     * @param item item with a specified search key.
+     */
+    @Override
+    public void remove(E item) {
+        int parent = NIL;
+        int node = root;
+        while (node != NIL) {
+            int d = key(node).compareTo(item);
+            if (d == 0) {
+                break;
+            }
+            parent = node;
+            node = (d > 0) ? left[node] : right[node];
+        }
+        if (node == NIL) {
+            return;
+        }
+        if (left[node] != NIL && right[node] != NIL) {
+            int successorParent = node;
+            int successor = right[node];
+            while (left[successor] != NIL) {
+                successorParent = successor;
+                successor = left[successor];
+            }
+            keys[node] = keys[successor];
+            parent = successorParent;
+            node = successor;
+        }
+        int replacement = (left[node] != NIL) ? left[node] : right[node];
+        if (parent == NIL) {
+            root = replacement;
+        } else if (left[parent] == node) {
+            left[parent] = replacement;
+        } else {
+            right[parent] = replacement;
+        }
+        release(node);
+        size--;
+    }
+
+    /**
+     * finds the minimum value of the tree.
+     *
+     * @return the minimum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E min() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        int node = root;
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return key(node);
+    }
+
+    /**
+     * finds the maximum value of the tree.
+     *
+     * @return the maximum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E max() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Binary search tree is empty");
+        }
+        int node = root;
+        while (right[node] != NIL) {
+            node = right[node];
+        }
+        return key(node);
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        int[] stack = new int[16];
+        int top = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top++] = node;
+                node = left[node];
+            }
+            node = stack[--top];
+            func.apply(keys[node]);
+            node = right[node];
+        }
+    }
+
+    @Override
+    public void preorderTraverse(Function func) {
+        int[] stack = new int[16];
+        int top = 0;
+        if (root != NIL) {
+            stack[top++] = root;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            func.apply(keys[node]);
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            if (right[node] != NIL) {
+                stack[top++] = right[node];
+            }
+            if (left[node] != NIL) {
+                stack[top++] = left[node];
+            }
+        }
+    }
+
+    @Override
+    public void postorderTraverse(Function func) {
+        int[] stack = new int[16];
+        int top = 0;
+        int node = root;
+        int lastVisited = NIL;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top++] = node;
+                node = left[node];
+            }
+            int peek = stack[top - 1];
+            if (right[peek] != NIL && right[peek] != lastVisited) {
+                node = right[peek];
+            } else {
+                func.apply(keys[peek]);
+                lastVisited = stack[--top];
+            }
+        }
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty
+     *
+     * @return the elements in ascending order
+     */
+    public ArrayList<E> sort() {
+        ArrayList<E> list = new ArrayList<>(size);
+        Function<E, Boolean> f = x -> list.add(x);
+        inorderTraverse(f);
+        return list;
+    }
+
+    /**
+     * Delete all leaf nodes of this tree in one pass, releasing their slots,
+     * and decrement the size of the tree. Does nothing if the tree is empty.
+     */
+    @Override
+    public void trim() {
+        if (root == NIL) {
+            return;
+        }
+        if (left[root] == NIL && right[root] == NIL) {
+            release(root);
+            root = NIL;
+            size = 0;
+            return;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            int child = left[node];
+            if (child != NIL) {
+                if (left[child] == NIL && right[child] == NIL) {
+                    left[node] = NIL;
+                    release(child);
+                    size--;
+                } else {
+                    stack[top++] = child;
+                }
+            }
+            child = right[node];
+            if (child != NIL) {
+                if (left[child] == NIL && right[child] == NIL) {
+                    right[node] = NIL;
+                    release(child);
+                    size--;
+                } else {
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        if (root == NIL) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        StringBuilder path = new StringBuilder();
+        int[] stack = new int[16];
+        int[] lengths = new int[16];
+        int top = 0;
+        stack[top] = root;
+        lengths[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            path.setLength(lengths[top]);
+            path.append(keys[node]);
+            if (left[node] == NIL && right[node] == NIL) {
+                paths.add(path.toString());
+                continue;
+            }
+            path.append("->");
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                lengths = Arrays.copyOf(lengths, 2 * lengths.length);
+            }
+            if (right[node] != NIL) {
+                stack[top] = right[node];
+                lengths[top++] = path.length();
+            }
+            if (left[node] != NIL) {
+                stack[top] = left[node];
+                lengths[top++] = path.length();
+            }
+        }
+        return paths;
+    }
+
+    @Override
+    public int diameter() {
+        return heightAndDiameter()[1];
+    }
+
+    @Override
+    public int height() {
+        return heightAndDiameter()[0];
+    }
+
+    /**
+     * An auxiliary method of the diameter and height methods that visits
+     * the tree once, post-order, keeping the heights of the visited
+     * subtrees on a stack from which each node pops its children's.
+     *
+     * @return the height and the diameter of the tree
+     */
+    private int[] heightAndDiameter() {
+        if (root == NIL) {
+            return new int[] {0, 0};
+        }
+        int[] stack = new int[16];
+        int[] heights = new int[16];
+        int top = 0;
+        int count = 0;
+        int longest = 0;
+        int node = root;
+        int lastVisited = NIL;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * top);
+                }
+                stack[top++] = node;
+                node = left[node];
+            }
+            int visit = stack[top - 1];
+            if (right[visit] != NIL && right[visit] != lastVisited) {
+                node = right[visit];
+                continue;
+            }
+            lastVisited = stack[--top];
+            int r = (right[visit] != NIL) ? heights[--count] : 0;
+            int l = (left[visit] != NIL) ? heights[--count] : 0;
+            longest = Math.max(longest, 1 + l + r);
+            if (count == heights.length) {
+                heights = Arrays.copyOf(heights, 2 * count);
+            }
+            heights[count++] = 1 + Math.max(l, r);
+        }
+        return new int[] {heights[0], longest};
+    }
+}
@@ -0,0 +1,637 @@
+package bstreedemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * A binary search tree split by key ranges into independent shards <br>
+ * Each shard is a BSTree that holds the keys from one splitter key, inclusive,
+ * up to the next, exclusive. Single operations go to the one shard that
+ * holds their key, found by binary search over the splitter keys. Bulk work
+ * runs one task per shard on a fork-join pool: insertAll, sort, trim,
+ * getPaths, diameter, height and rebalance. Because the ranges do not
+ * overlap and come in ascending order, the shards taken one after another
+ * are in ascending order too, so iteration and inorderTraverse need no
+ * merge.
+ * <br>
+ * A shard that grows beyond twice its share of the keys is split at its
+ * median, or into as many shards of about a share as it holds when a batch
+ * grew it further, and a shard that shrinks to an eighth of that share is merged
+ * into a neighbor. rebalance() redistributes all the keys evenly over the
+ * target number of shards. The shape-related methods describe the shards,
+ * not one combined tree: trim deletes the leaves of every shard, getPaths
+ * gives the paths of every shard in key order, and diameter and height give
+ * the largest among the shards.
+ * <br>
+ * The tree is not safe for use by several threads at once; the parallelism
+ * is inside its bulk operations.
+ *
+ * @param <E> the tree data type
+ * @see BSTree
+ * @see BSTreeAPI
+ */
+public class ShardedBSTree<E extends Comparable<E>> implements BSTreeAPI<E>, Iterable<E>
+{
+
+    /**
+     * the number of keys below which a shard is never split
+     */
+    private static final int MIN_SHARD_SIZE = 1024;
+
+    /**
+     * the shards in ascending order of their key ranges
+     */
+    private final ArrayList<BSTree<E>> shards = new ArrayList<>();
+
+    /**
+     * the smallest key of each shard but the first; one fewer than the
+     * shards
+     */
+    private final ArrayList<E> splitters = new ArrayList<>();
+
+    /**
+     * the number of shards rebalance() distributes the keys over
+     */
+    private final int targetShards;
+
+    /**
+     * the pool the bulk operations run on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * the balancing policy of every shard
+     */
+    private final BSTree.Balance policy;
+
+    /**
+     * the augmentations of every shard
+     */
+    private final BSTree.Augment[] augments;
+
+    /**
+     * the number of keys in all the shards
+     */
+    private int size;
+
+    /**
+     * Constructs an empty tree whose bulk operations run on the common
+     * fork-join pool
+     *
+     * @param targetShards the number of shards to spread the keys over
+     * @param policy the balancing policy of every shard
+     * @param augments the augmentations of every shard
+     */
+    public ShardedBSTree(int targetShards, BSTree.Balance policy, BSTree.Augment... augments) {
+        this(targetShards, ForkJoinPool.commonPool(), policy, augments);
+    }
+
+    /**
+     * Constructs an empty tree whose bulk operations run on the specified
+     * pool
+     *
+     * @param targetShards the number of shards to spread the keys over
+     * @param pool the pool the bulk operations run on
+     * @param policy the balancing policy of every shard
+     * @param augments the augmentations of every shard
+     */
+    public ShardedBSTree(int targetShards, ForkJoinPool pool, BSTree.Balance policy,
+            BSTree.Augment... augments) {
+        if (targetShards < 1) {
+            throw new IllegalArgumentException("At least one shard expected.");
+        }
+        this.targetShards = targetShards;
+        this.pool = pool;
+        this.policy = policy;
+        this.augments = augments.clone();
+        shards.add(new BSTree<>(policy, augments));
+        size = 0;
+    }
+
+    /**
+     * Gives the number of shards the keys are currently split into
+     *
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Gives the number of keys in each shard
+     *
+     * @return the sizes of the shards in ascending order of their ranges
+     */
+    public int[] shardSizes() {
+        int[] sizes = new int[shards.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = shards.get(i).size();
+        }
+        return sizes;
+    }
+
+    /**
+     * Gives the index of the shard whose range holds the specified key
+     *
+     * @param key a data key
+     * @return the index of the shard
+     */
+    private int shardOf(E key) {
+        int lo = 0;
+        int hi = splitters.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (splitters.get(mid).compareTo(key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Gives the number of keys a shard may hold before it is split: twice
+     * its share of the keys, and never fewer than MIN_SHARD_SIZE
+     *
+     * @return the largest size of a shard
+     */
+    private int limit() {
+        return Math.max(MIN_SHARD_SIZE, (int) (2L * size / targetShards) + 1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insert(E item) {
+        int i = shardOf(item);
+        BSTree<E> shard = shards.get(i);
+        int before = shard.size();
+        shard.insert(item);
+        size += shard.size() - before;
+        if (shard.size() > limit()) {
+            split(i);
+        }
+    }
+
+    /**
+     * Inserts the specified items. The items are split up by shard and each
+     * shard inserts its items in a task of its own, in the order they come.
+     * Equal items replace each other as if inserted one at a time. When the
+     * tree has fewer shards than its target and gets enough keys to fill
+     * them, the keys are redistributed instead, by sorting them in parallel
+     * and building each shard from its range of the sorted keys.
+     *
+     * @param items the items to insert
+     */
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends E> items) {
+        Object[] batch = items.toArray();
+        if (shards.size() < targetShards && (long) size + batch.length >= (long) targetShards * MIN_SHARD_SIZE) {
+            Object[] all = Arrays.copyOf(sorted(), size + batch.length);
+            System.arraycopy(batch, 0, all, size, batch.length);
+            Arrays.parallelSort(all, 0, all.length, (a, b) -> ((E) a).compareTo((E) b));
+            int distinct = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (distinct > 0 && ((E) all[distinct - 1]).compareTo((E) all[i]) == 0) {
+                    all[distinct - 1] = all[i];
+                } else {
+                    all[distinct++] = all[i];
+                }
+            }
+            distribute(all, distinct);
+            return;
+        }
+        ArrayList<ArrayList<E>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Object item : batch) {
+            parts.get(shardOf((E) item)).add((E) item);
+        }
+        int[] added = new int[shards.size()];
+        forEachShard(i -> {
+            BSTree<E> shard = shards.get(i);
+            int before = shard.size();
+            for (E item : parts.get(i)) {
+                shard.insert(item);
+            }
+            added[i] = shard.size() - before;
+        });
+        for (int count : added) {
+            size += count;
+        }
+        for (int i = shards.size() - 1; i >= 0; i--) {
+            if (shards.get(i).size() > limit()) {
+                split(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean inTree(E item) {
+        return shards.get(shardOf(item)).inTree(item);
+    }
+
+    @Override
+    public void remove(E item) {
+        int i = shardOf(item);
+        BSTree<E> shard = shards.get(i);
+        int before = shard.size();
+        shard.remove(item);
+        if (shard.size() != before) {
+            size--;
+            if (shards.size() > 1 && shard.size() < limit() / 8) {
+                mergeWithNeighbor(i);
+            }
+        }
+    }
+
+    @Override
+    public E retrieve(E key) throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("Non-empty tree expected on retrieve().");
+        }
+        return shards.get(shardOf(key)).retrieve(key);
+    }
+
+    /**
+     * Gives a reference to the item in the tree with the specified key, like
+     * retrieve, but answers a missing key with null instead of an exception
+     *
+     * @param key the key to the item to be retrieved
+     * @return the item with the specified key, or null if there is none
+     */
+    public E retrieveOrNull(E key) {
+        return shards.get(shardOf(key)).retrieveOrNull(key);
+    }
+
+    /**
+     * finds the minimum value of the tree.
+     *
+     * @return the minimum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E min() throws BSTreeException {
+        for (BSTree<E> shard : shards) {
+            if (!shard.isEmpty()) {
+                return shard.min();
+            }
+        }
+        throw new BSTreeException("Binary search tree is empty");
+    }
+
+    /**
+     * finds the maximum value of the tree.
+     *
+     * @return the maximum value in the tree
+     * @throws BSTreeException when the tree is empty
+     */
+    public E max() throws BSTreeException {
+        for (int i = shards.size() - 1; i >= 0; i--) {
+            if (!shards.get(i).isEmpty()) {
+                return shards.get(i).max();
+            }
+        }
+        throw new BSTreeException("Binary search tree is empty");
+    }
+
+    @Override
+    public void inorderTraverse(Function func) {
+        for (BSTree<E> shard : shards) {
+            shard.inorderTraverse(func);
+        }
+    }
+
+    /**
+     * Traverses each shard in preorder, the shards in ascending order of
+     * their ranges
+     *
+     * @param func a function applied to the data in each node
+     */
+    @Override
+    public void preorderTraverse(Function func) {
+        for (BSTree<E> shard : shards) {
+            shard.preorderTraverse(func);
+        }
+    }
+
+    /**
+     * Traverses each shard in postorder, the shards in ascending order of
+     * their ranges
+     *
+     * @param func a function applied to the data in each node
+     */
+    @Override
+    public void postorderTraverse(Function func) {
+        for (BSTree<E> shard : shards) {
+            shard.postorderTraverse(func);
+        }
+    }
+
+    /**
+     * Gives an iterator over the elements of this tree in ascending order,
+     * which goes through the shards one after another. The iterator
+     * supports remove, which never merges shards, and fails fast on
+     * concurrent changes to the shard it is in.
+     *
+     * @return an in-order iterator
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int shard = 0;
+            private Iterator<E> current = shards.get(0).iterator();
+            private Iterator<E> last;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && shard + 1 < shards.size()) {
+                    current = shards.get(++shard).iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = current;
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                last.remove();
+                last = null;
+                size--;
+            }
+        };
+    }
+
+    /**
+     * returns an array list containing the elements of the tree in ascending
+     * order or an empty array list if the tree is empty. Each shard is
+     * copied by a task of its own into its part of one array.
+     *
+     * @return the elements in ascending order
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<E> sort() {
+        return new ArrayList<>((List<E>) (List<?>) Arrays.asList(sorted()));
+    }
+
+    /**
+     * Copies the keys of every shard, in parallel, into one array in
+     * ascending order
+     *
+     * @return an array of exactly size keys
+     */
+    private Object[] sorted() {
+        Object[] all = new Object[size];
+        int[] offsets = new int[shards.size()];
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] + shards.get(i - 1).size();
+        }
+        forEachShard(i -> {
+            int[] next = {offsets[i]};
+            shards.get(i).inorderTraverse(item -> all[next[0]++] = item);
+        });
+        return all;
+    }
+
+    /**
+     * Deletes the leaves of every shard, each shard in a task of its own.
+     */
+    @Override
+    public void trim() {
+        int[] removed = new int[shards.size()];
+        forEachShard(i -> {
+            BSTree<E> shard = shards.get(i);
+            int before = shard.size();
+            shard.trim();
+            removed[i] = before - shard.size();
+        });
+        for (int count : removed) {
+            size -= count;
+        }
+    }
+
+    /**
+     * Gives the root-to-leaf paths of every shard, the shards in ascending
+     * order of their ranges, each shard's paths found by a task of its own.
+     *
+     * @return an array list of the paths
+     * @throws BSTreeException when the tree is empty
+     */
+    @Override
+    public ArrayList<String> getPaths() throws BSTreeException {
+        if (size == 0) {
+            throw new BSTreeException("getPaths() called on empty tree.");
+        }
+        List<List<String>> paths = new ArrayList<>(Collections.nCopies(shards.size(), null));
+        forEachShard(i -> {
+            ArrayList<String> shardPaths = new ArrayList<>();
+            shards.get(i).forEachPath(path -> shardPaths.add(path.toString()));
+            paths.set(i, shardPaths);
+        });
+        ArrayList<String> all = new ArrayList<>();
+        for (List<String> shardPaths : paths) {
+            all.addAll(shardPaths);
+        }
+        return all;
+    }
+
+    /**
+     * Gives the largest diameter among the shards, each measured by a task
+     * of its own.
+     *
+     * @return the diameter of the widest shard, or 0 if the tree is empty
+     */
+    @Override
+    public int diameter() {
+        int[] diameters = new int[shards.size()];
+        forEachShard(i -> diameters[i] = shards.get(i).diameter());
+        return Arrays.stream(diameters).max().getAsInt();
+    }
+
+    /**
+     * Gives the largest height among the shards, each measured by a task
+     * of its own.
+     *
+     * @return the height of the highest shard, or 0 if the tree is empty
+     */
+    @Override
+    public int height() {
+        int[] heights = new int[shards.size()];
+        forEachShard(i -> heights[i] = shards.get(i).height());
+        return Arrays.stream(heights).max().getAsInt();
+    }
+
+    /**
+     * Redistributes the keys evenly over the target number of shards,
+     * rebuilding every shard balanced from its range of the keys.
+     */
+    public void rebalance() {
+        Object[] all = sorted();
+        distribute(all, all.length);
+    }
+
+    /**
+     * Replaces the shards by the target number of shards, or fewer when
+     * there are too few keys to fill them, built in parallel from equal
+     * ranges of the specified keys
+     *
+     * @param all keys in strictly ascending order
+     * @param count the number of keys in all to use
+     */
+    @SuppressWarnings("unchecked")
+    private void distribute(Object[] all, int count) {
+        int n = Math.max(1, Math.min(targetShards, (count + MIN_SHARD_SIZE / 2 - 1) / (MIN_SHARD_SIZE / 2)));
+        List<E> keys = (List<E>) (List<?>) Arrays.asList(all).subList(0, count);
+        shards.clear();
+        splitters.clear();
+        for (int i = 0; i < n; i++) {
+            shards.add(null);
+            if (i > 0) {
+                splitters.add(keys.get((int) ((long) count * i / n)));
+            }
+        }
+        forEachShard(i -> shards.set(i, build(keys.subList((int) ((long) count * i / n),
+                (int) ((long) count * (i + 1) / n)))));
+        size = count;
+    }
+
+    /**
+     * Splits the shard at the specified index into shards of about a
+     * share of the keys each, built balanced from equal ranges of its
+     * keys: at its median into two for a shard just over the limit, into
+     * more for one a batch has grown further, so that no piece is over
+     * the limit
+     *
+     * @param i the index of a shard over the limit
+     */
+    private void split(int i) {
+        List<E> keys = shards.get(i).sort();
+        int count = keys.size();
+        int share = limit() / 2;
+        int n = Math.max(2, (count + share / 2) / share);
+        shards.set(i, build(keys.subList(0, count / n)));
+        for (int j = 1; j < n; j++) {
+            int from = (int) ((long) count * j / n);
+            shards.add(i + j, build(keys.subList(from, (int) ((long) count * (j + 1) / n))));
+            splitters.add(i + j - 1, keys.get(from));
+        }
+    }
+
+    /**
+     * Merges the shard at the specified index with its smaller neighbor
+     * into one shard built balanced from both, if the two together are
+     * small enough not to be split again
+     *
+     * @param i the index of a shard, there being at least two
+     */
+    private void mergeWithNeighbor(int i) {
+        int left;
+        if (i == 0) {
+            left = 0;
+        } else if (i == shards.size() - 1) {
+            left = i - 1;
+        } else {
+            left = (shards.get(i - 1).size() <= shards.get(i + 1).size()) ? i - 1 : i;
+        }
+        if (shards.get(left).size() + shards.get(left + 1).size() > limit() / 2) {
+            return;
+        }
+        ArrayList<E> keys = shards.get(left).sort();
+        keys.addAll(shards.get(left + 1).sort());
+        shards.set(left, build(keys));
+        shards.remove(left + 1);
+        splitters.remove(left);
+    }
+
+    /**
+     * Builds a shard from keys in strictly ascending order
+     *
+     * @param keys the keys of the shard
+     * @return a balanced shard holding the keys
+     */
+    private BSTree<E> build(List<E> keys) {
+        try {
+            return BSTree.fromSorted(keys, policy, augments);
+        } catch (BSTreeException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs the specified action for every shard index, on the pool, and
+     * waits for all of them. Each action may change only its own shard and
+     * its own slot of any array it fills.
+     *
+     * @param action the action, given the index of a shard
+     */
+    private void forEachShard(IntConsumer action) {
+        pool.invoke(new ShardTask(action, 0, shards.size()));
+    }
+
+    /**
+     * Runs an action for a range of shard indices, splitting the range in
+     * halves down to single shards.
+     */
+    @SuppressWarnings("serial")
+    private static final class ShardTask extends RecursiveAction {
+
+        /**
+         * the action run for each shard index
+         */
+        private final IntConsumer action;
+
+        /**
+         * the first index of the range
+         */
+        private final int lo;
+
+        /**
+         * the index past the end of the range
+         */
+        private final int hi;
+
+        ShardTask(IntConsumer action, int lo, int hi) {
+            this.action = action;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                action.accept(lo);
+            } else if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ShardTask(action, lo, mid), new ShardTask(action, mid, hi));
+            }
+        }
+    }
+}
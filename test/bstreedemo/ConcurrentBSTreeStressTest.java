@@ -0,0 +1,132 @@
+package bstreedemo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Has several threads insert, remove and look up keys of one shared range
+ * in a ConcurrentBSTree at once, and checks every lookup and the final
+ * tree against what the threads did <br>
+ * Every key belongs to one of a few lock stripes, and a thread changes or
+ * checks a key while it holds the key's stripe, recording whether the key
+ * is in the tree. The stripes order the changes of one key, so the record
+ * says what a lookup of that key must find, while changes of keys of other
+ * stripes, next to it in the tree, go on in other threads. A thread that
+ * holds no stripe looks up keys, and another walks the whole tree, to
+ * race with the changes.
+ *
+ * @see ConcurrentBSTree
+ */
+public class ConcurrentBSTreeStressTest
+{
+
+    /**
+     * the number of keys the threads share
+     */
+    private static final int KEYS = 1 << 12;
+
+    /**
+     * the number of lock stripes the keys are spread over
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * the number of threads that change the tree
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * the number of operations each of them makes
+     */
+    private static final int OPERATIONS = 200000;
+
+    @Test
+    public void concurrentChangesKeepTheTreeConsistent() throws Exception {
+        ConcurrentBSTree<Integer> tree = new ConcurrentBSTree<>();
+        Object[] stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        boolean[] present = new boolean[KEYS];
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS + 2);
+        List<Future<?>> changers = new ArrayList<>();
+        List<Future<?>> watchers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                changers.add(threads.submit(() -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        int key = random.nextInt(KEYS);
+                        int op = random.nextInt(10);
+                        synchronized (stripes[key % STRIPES]) {
+                            if (op < 4) {
+                                tree.insert(key);
+                                present[key] = true;
+                            } else if (op < 7) {
+                                tree.remove(key);
+                                present[key] = false;
+                            } else {
+                                assertEquals(present[key], tree.inTree(key), "inTree(" + key + ")");
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            watchers.add(threads.submit(() -> {
+                Random random = new Random(-1);
+                start.await();
+                while (running.get()) {
+                    tree.inTree(random.nextInt(KEYS));
+                }
+                return null;
+            }));
+            watchers.add(threads.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    ArrayList<Integer> keys = tree.sort();
+                    for (int i = 1; i < keys.size(); i++) {
+                        assertTrue(keys.get(i - 1) < keys.get(i), "sort() out of order");
+                    }
+                    tree.height();
+                }
+                return null;
+            }));
+            start.countDown();
+            for (Future<?> changer : changers) {
+                changer.get(5, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            for (Future<?> watcher : watchers) {
+                watcher.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            running.set(false);
+            threads.shutdownNow();
+        }
+        ArrayList<Integer> expected = new ArrayList<>();
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals(present[key], tree.inTree(key), "inTree(" + key + ") after the run");
+            if (present[key]) {
+                expected.add(key);
+            }
+        }
+        assertEquals(expected.size(), tree.size(), "size()");
+        assertEquals(expected, tree.sort(), "sort()");
+    }
+}
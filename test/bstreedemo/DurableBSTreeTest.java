@@ -0,0 +1,199 @@
+package bstreedemo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Abandons a DurableBSTree without closing it, as a crash would, damages
+ * its log the way a crash or a bad disk would, and checks what opening the
+ * directory again recovers <br>
+ * Every tree here has a commit window of 0, so each change is in the log
+ * when it returns.
+ *
+ * @see DurableBSTree
+ */
+public class DurableBSTreeTest
+{
+
+    /**
+     * the kind of a record of an insert
+     */
+    private static final byte INSERT = 1;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        TreeSet<Integer> expected = new TreeSet<>();
+        DurableBSTree<Integer> abandoned = open(BSTree.Balance.AVL, 1L << 30);
+        change(abandoned, expected, 2000, 1);
+        append(newestLog(), new byte[] {INSERT, 4, 0, 0});
+        try (DurableBSTree<Integer> tree = open(BSTree.Balance.AVL, 1L << 30)) {
+            assertEquals(new ArrayList<>(expected), tree.sort());
+            change(tree, expected, 500, 2);
+        }
+        try (DurableBSTree<Integer> tree = open(BSTree.Balance.AVL, 1L << 30)) {
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+    }
+
+    @Test
+    public void recordFailingItsCrcIsCutOffWithWhatFollows() throws IOException {
+        TreeSet<Integer> expected = new TreeSet<>();
+        DurableBSTree<Integer> abandoned = open(BSTree.Balance.NONE, 1L << 30);
+        change(abandoned, expected, 2000, 3);
+        Path log = newestLog();
+        long good = Files.size(log);
+        abandoned.insert(-1);
+        abandoned.insert(-2);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[(int) good + 3] ^= 0x40;
+        Files.write(log, bytes);
+        try (DurableBSTree<Integer> tree = open(BSTree.Balance.NONE, 1L << 30)) {
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+    }
+
+    @Test
+    public void badRecordInAnOlderLogFailsTheOpen() throws IOException {
+        DurableBSTree<Integer> abandoned = open(BSTree.Balance.NONE, 1L << 30);
+        change(abandoned, new TreeSet<>(), 200, 4);
+        Path log = newestLog();
+        byte[] bytes = Files.readAllBytes(log);
+        String name = log.getFileName().toString();
+        long generation = Long.parseLong(name.substring(name.indexOf('-') + 1));
+        Files.write(log.resolveSibling("wal-" + (generation + 1)), bytes);
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(log, bytes);
+        assertThrows(IOException.class, () -> open(BSTree.Balance.NONE, 1L << 30));
+    }
+
+    @Test
+    public void checkpointsReplaceTheLogsTheyCover() throws IOException {
+        TreeSet<Integer> expected = new TreeSet<>();
+        DurableBSTree<Integer> abandoned = open(BSTree.Balance.AVL, 1024);
+        change(abandoned, expected, 5000, 5);
+        abandoned.checkpoint();
+        List<String> files = files();
+        assertEquals(2, files.size(), files.toString());
+        assertTrue(files.get(0).startsWith("checkpoint-"), files.toString());
+        assertTrue(files.get(1).startsWith("wal-"), files.toString());
+        try (DurableBSTree<Integer> tree = open(BSTree.Balance.AVL, 1024)) {
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+    }
+
+    @Test
+    public void trimIsReplayedAsTheRemovesItMade() throws IOException {
+        DurableBSTree<Integer> abandoned = open(BSTree.Balance.SPLAY, 1L << 30);
+        change(abandoned, new TreeSet<>(), 2000, 6);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            abandoned.inTree(random.nextInt(4096));
+        }
+        abandoned.trim();
+        ArrayList<Integer> expected = abandoned.sort();
+        try (DurableBSTree<Integer> tree = open(BSTree.Balance.SPLAY, 1L << 30)) {
+            assertEquals(expected, tree.sort());
+        }
+    }
+
+    /**
+     * Opens the tree in the temporary directory with a commit window of 0
+     *
+     * @param policy the balancing policy of a new tree
+     * @param checkpointBytes the number of bytes of log after which a
+     * checkpoint is taken
+     * @return the tree
+     * @throws IOException when the directory cannot be recovered
+     */
+    private DurableBSTree<Integer> open(BSTree.Balance policy, long checkpointBytes) throws IOException {
+        return new DurableBSTree<>(dir, BSTreeCodec.INTEGER, policy, 0, checkpointBytes);
+    }
+
+    /**
+     * Inserts and removes random keys in a tree and in the set of keys it
+     * should hold
+     *
+     * @param tree the tree
+     * @param expected the keys the tree should hold
+     * @param count the number of changes
+     * @param seed the seed of the changes
+     */
+    private static void change(DurableBSTree<Integer> tree, TreeSet<Integer> expected, int count, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            Integer key = random.nextInt(4096);
+            if (random.nextInt(4) == 0) {
+                tree.remove(key);
+                expected.remove(key);
+            } else {
+                tree.insert(key);
+                expected.add(key);
+            }
+        }
+    }
+
+    /**
+     * Gives the names of the files in the temporary directory
+     *
+     * @return the names in ascending order
+     * @throws IOException when the directory cannot be read
+     */
+    private List<String> files() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Gives the log file of the newest generation
+     *
+     * @return the log file
+     * @throws IOException when the directory cannot be read
+     */
+    private Path newestLog() throws IOException {
+        Path newest = null;
+        long last = -1;
+        for (String name : files()) {
+            if (name.startsWith("wal-")) {
+                long generation = Long.parseLong(name.substring(4));
+                if (generation > last) {
+                    last = generation;
+                    newest = dir.resolve(name);
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Appends bytes to a file
+     *
+     * @param file the file
+     * @param bytes the bytes appended
+     * @throws IOException when the file cannot be written
+     */
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+}
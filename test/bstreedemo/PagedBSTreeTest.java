@@ -0,0 +1,123 @@
+package bstreedemo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Reopens the file of a PagedBSTree after it was closed, after it was
+ * flushed and abandoned, and after it was changed past its last flush, with
+ * a cache small enough that pages are evicted and written back throughout.
+ *
+ * @see PagedBSTree
+ */
+public class PagedBSTreeTest
+{
+
+    /**
+     * the number of bytes in a page, small so the tree has several levels
+     */
+    private static final int PAGE = 256;
+
+    /**
+     * the number of pages the cache holds
+     */
+    private static final int CACHE = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void closedTreeReopensWithItsKeys() throws IOException {
+        Path file = dir.resolve("tree");
+        TreeSet<Integer> expected = new TreeSet<>();
+        try (PagedBSTree<Integer> tree = open(file)) {
+            fill(tree, expected, 20000, 1);
+            Random random = new Random(2);
+            for (int i = 0; i < 5000; i++) {
+                Integer key = random.nextInt(1 << 20);
+                tree.remove(key);
+                expected.remove(key);
+            }
+        }
+        try (PagedBSTree<Integer> tree = open(file)) {
+            assertEquals(expected.size(), tree.size());
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+    }
+
+    @Test
+    public void flushedTreeReopensWithoutClose() throws IOException {
+        Path file = dir.resolve("tree");
+        TreeSet<Integer> expected = new TreeSet<>();
+        PagedBSTree<Integer> abandoned = open(file);
+        fill(abandoned, expected, 20000, 3);
+        abandoned.flush();
+        try (PagedBSTree<Integer> tree = open(file)) {
+            assertEquals(expected.size(), tree.size());
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+        abandoned.close();
+    }
+
+    @Test
+    public void treeChangedAfterItsFlushIsRefused() throws IOException {
+        Path file = dir.resolve("tree");
+        TreeSet<Integer> expected = new TreeSet<>();
+        PagedBSTree<Integer> abandoned = open(file);
+        fill(abandoned, expected, 2000, 4);
+        abandoned.flush();
+        fill(abandoned, expected, 20000, 5);
+        assertThrows(IOException.class, () -> open(file));
+        abandoned.flush();
+        try (PagedBSTree<Integer> tree = open(file)) {
+            assertEquals(new ArrayList<>(expected), tree.sort());
+        }
+        abandoned.close();
+    }
+
+    @Test
+    public void treeNeverFlushedIsRefused() throws IOException {
+        Path file = dir.resolve("tree");
+        PagedBSTree<Integer> abandoned = open(file);
+        fill(abandoned, new TreeSet<>(), 20000, 6);
+        assertThrows(IOException.class, () -> open(file));
+        abandoned.close();
+    }
+
+    /**
+     * Opens the tree in the specified file with small pages and cache
+     *
+     * @param file the file of the tree
+     * @return the tree
+     * @throws IOException when the file cannot be opened
+     */
+    private static PagedBSTree<Integer> open(Path file) throws IOException {
+        return new PagedBSTree<>(file, BSTreeCodec.INTEGER, PAGE, CACHE);
+    }
+
+    /**
+     * Inserts random keys into a tree and into the set of keys it should
+     * hold
+     *
+     * @param tree the tree
+     * @param expected the keys the tree should hold
+     * @param count the number of keys inserted
+     * @param seed the seed of the keys
+     */
+    private static void fill(PagedBSTree<Integer> tree, TreeSet<Integer> expected, int count, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            Integer key = random.nextInt(1 << 20);
+            tree.insert(key);
+            expected.add(key);
+        }
+    }
+}